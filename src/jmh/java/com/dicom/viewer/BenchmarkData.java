@@ -0,0 +1,61 @@
+package com.dicom.viewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks. A dataset is either a series directory under res/ (PAT001 is
+ * the bundled sample; -Ddicom.viewer.benchData points at another) or "synthetic", a volume of
+ * noise whose size is the benchmark's WIDTHxHEIGHTxDEPTH parameter, so scaling can be measured
+ * without a large series on disk.
+ */
+final class BenchmarkData {
+
+    static final String SYNTHETIC = "synthetic";
+
+    private BenchmarkData() {
+    }
+
+    static File[] files(String dataset) throws IOException {
+        File dir = new File(System.getProperty("dicom.viewer.benchData", "res/" + dataset));
+        File[] files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".dcm"));
+        if (files == null || files.length == 0) throw new IOException("No DICOM files in " + dir);
+        Arrays.sort(files);
+        return files;
+    }
+
+    // The loaded dataset; size is only used for synthetic volumes
+    static Series series(String dataset, String size) throws IOException {
+        if (!SYNTHETIC.equals(dataset)) return new SeriesLoader().load(files(dataset));
+
+        String[] dims = size.split("x");
+        if (dims.length != 3) throw new IllegalArgumentException("Size must be WIDTHxHEIGHTxDEPTH: " + size);
+        Volume volume = new Volume(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]), Integer.parseInt(dims[2]));
+        Random random = new Random(42);
+        VolumeStats.Builder stats = new VolumeStats.Builder(volume.getWidth(), volume.getHeight(), volume.getDepth(), false);
+        for (int z = 0; z < volume.getDepth(); z++) {
+            int base = volume.index(0, 0, z);
+            for (int i = 0; i < volume.getSliceStride(); i++) {
+                volume.getVoxels().put(base + i, (short) random.nextInt(4096));
+            }
+            stats.addSlice(volume, z);
+        }
+
+        // Axial slices 1 mm apart, 0.5 mm pixels, as a CT series would be
+        List<DicomSlice> slices = new ArrayList<>(volume.getDepth());
+        for (int z = 0; z < volume.getDepth(); z++) {
+            DicomSlice slice = new DicomSlice();
+            slice.rows = volume.getHeight();
+            slice.columns = volume.getWidth();
+            slice.pixelSpacing = new double[] {0.5, 0.5};
+            slice.imageOrientation = new double[] {1, 0, 0, 0, 1, 0};
+            slice.imagePosition = new double[] {-128, -128, z};
+            slices.add(slice);
+        }
+        return new Series(slices, volume, stats.build(new boolean[volume.getDepth()]));
+    }
+}
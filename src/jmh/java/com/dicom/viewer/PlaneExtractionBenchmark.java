@@ -0,0 +1,69 @@
+package com.dicom.viewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to reformat one plane, per plane and volume layout. The index moves on every call so a
+ * sagittal or coronal sweep is measured the way scrolling sees it, not one plane left hot in cache.
+ *
+ * mvn -Pbenchmark compile exec:exec -Djmh.args=PlaneExtraction
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class PlaneExtractionBenchmark {
+
+    // PAT001 is the sample series under res/; synthetic is a volume of noise of the given size
+    @Param({"PAT001", "synthetic"})
+    public String dataset;
+
+    @Param({"512x512x1000"})
+    public String size;
+
+    // 0 reads the linear volume, otherwise the brick edge length
+    @Param({"0", "16", "32"})
+    public int brickSize;
+
+    @Param({"AXIAL", "CORONAL", "SAGITTAL"})
+    public Plane plane;
+
+    private Volume volume;
+    private BrickedVolume bricks;
+    private short[] out;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        volume = BenchmarkData.series(dataset, size).volume;
+        bricks = brickSize > 0 ? new BrickedVolume(volume, brickSize) : null;
+        out = new short[plane.width(volume) * plane.height(volume)];
+    }
+
+    @Benchmark
+    public short[] extract() {
+        index = (index + 7) % plane.count(volume);
+        if (bricks != null) {
+            bricks.extract(plane, index, out);
+        } else {
+            PlaneExtractor.extract(volume, plane, index, out);
+        }
+        return out;
+    }
+}
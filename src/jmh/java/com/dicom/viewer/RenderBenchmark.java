@@ -0,0 +1,80 @@
+package com.dicom.viewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one frame after the voxels are in memory: reformatting and windowing a plane into an
+ * ARGB frame, as the render service does, and copying the frame into the direct buffer behind
+ * the view's PixelBuffer, as PlaneImage does on the FX thread. The copy is measured without
+ * JavaFX itself, whose image update needs a running toolkit. Run with -prof gc to see the bytes
+ * allocated per frame.
+ *
+ * mvn -Pbenchmark compile exec:exec -Djmh.args=Render
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class RenderBenchmark {
+
+    @Param({"PAT001", "synthetic"})
+    public String dataset;
+
+    @Param({"512x512x400"})
+    public String size;
+
+    @Param({"AXIAL", "CORONAL", "SAGITTAL"})
+    public Plane plane;
+
+    private PlaneRenderer renderer;
+    private WindowLut lut;
+    private short[] scratch;
+    private RenderCache.Frame frame;
+    private IntBuffer pixels;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Series series = BenchmarkData.series(dataset, size);
+        DicomSlice first = series.slices.get(0);
+        boolean signed = first.pixelRepresentation == 1;
+        renderer = new PlaneRenderer(series.volume, null, null);
+        VolumeStats.Window window = series.stats.autoWindow(first.rescaleSlope, first.rescaleIntercept);
+        lut = new WindowLut(window.center, window.width, first.rescaleSlope, first.rescaleIntercept, signed);
+        scratch = new short[renderer.planeSize(plane)];
+        frame = renderer.render(plane, 0, lut, scratch);
+        pixels = ByteBuffer.allocateDirect(frame.pixels.length * Integer.BYTES)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    @Benchmark
+    public RenderCache.Frame render() {
+        index = (index + 7) % plane.count(renderer.getVolume());
+        return renderer.render(plane, index, lut, scratch);
+    }
+
+    @Benchmark
+    public IntBuffer toPixelBuffer() {
+        pixels.put(0, frame.pixels, 0, frame.pixels.length);
+        return pixels;
+    }
+}
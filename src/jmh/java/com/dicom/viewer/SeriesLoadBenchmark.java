@@ -0,0 +1,88 @@
+package com.dicom.viewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting a series off disk: parsing one file's header, decoding one slice's pixels into
+ * a volume, and loading the whole series the way the viewer does. Needs real files, so only runs
+ * on series directories. The files stay in the page cache after the first iteration, so this
+ * measures parsing and decoding rather than the disk.
+ *
+ * mvn -Pbenchmark compile exec:exec -Djmh.args=SeriesLoad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class SeriesLoadBenchmark {
+
+    @Param({"PAT001"})
+    public String dataset;
+
+    // Decode threads of the full load; 0 uses the loader's default of one per core
+    @Param({"1", "0"})
+    public int decodeThreads;
+
+    private File[] files;
+    private List<DicomSlice> slices;
+    private Volume sliceVolume;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        files = BenchmarkData.files(dataset);
+        slices = new ArrayList<>(files.length);
+        for (File file : files) slices.addAll(SeriesLoader.scanHeader(file));
+        DicomSlice first = slices.get(0);
+        sliceVolume = new Volume(first.columns, first.rows, 1);
+    }
+
+    // Header of one file, moving through the series
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<DicomSlice> scanHeader() throws IOException {
+        index = (index + 1) % files.length;
+        return SeriesLoader.scanHeader(files[index]);
+    }
+
+    // Pixels of one slice, read and written into a one-slice volume
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Volume decodeSlice() throws IOException {
+        index = (index + 1) % slices.size();
+        DicomSlice slice = slices.get(index);
+        ByteBuffer source = PixelDecoder.readSource(slice);
+        try (FrameReaderPool readers = new FrameReaderPool()) {
+            if (source == null) readers.expect(slice.file, 1);
+            PixelDecoder.decode(slice, source, sliceVolume, 0, readers);
+        }
+        return sliceVolume;
+    }
+
+    // Headers, pixels, sorting and statistics of the whole series into one volume
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Series loadSeries() throws IOException {
+        SeriesLoader loader = decodeThreads > 0 ? new SeriesLoader(decodeThreads) : new SeriesLoader();
+        return loader.load(files);
+    }
+}
@@ -0,0 +1,71 @@
+package com.dicom.viewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the geometry queries the crosshair makes on every drag event: the axial slice nearest
+ * a patient position, and the patient to voxel transform. The position sweeps through the series
+ * and slightly past both ends.
+ *
+ * mvn -Pbenchmark compile exec:exec -Djmh.args=SliceLookup
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SliceLookupBenchmark {
+
+    @Param({"PAT001", "synthetic"})
+    public String dataset;
+
+    @Param({"512x512x1000"})
+    public String size;
+
+    private VolumeGeometry geometry;
+    private final double[] voxel = new double[3];
+    private double[][] positions;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        List<DicomSlice> slices = BenchmarkData.series(dataset, size).slices;
+        geometry = new VolumeGeometry(slices);
+        double[] first = slices.get(0).imagePosition, last = slices.get(slices.size() - 1).imagePosition;
+        positions = new double[1024][];
+        for (int i = 0; i < positions.length; i++) {
+            double t = -0.05 + 1.1 * i / (positions.length - 1);
+            positions[i] = new double[3];
+            for (int j = 0; j < 3; j++) positions[i][j] = first[j] + t * (last[j] - first[j]);
+        }
+    }
+
+    @Benchmark
+    public int nearestSlice() {
+        index = (index + 1) & (positions.length - 1);
+        return geometry.nearestSlice(positions[index]);
+    }
+
+    @Benchmark
+    public double[] patientToVoxel() {
+        index = (index + 1) & (positions.length - 1);
+        geometry.patientToVoxel(positions[index], voxel);
+        return voxel;
+    }
+}
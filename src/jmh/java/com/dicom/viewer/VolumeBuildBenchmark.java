@@ -0,0 +1,66 @@
+package com.dicom.viewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build what the viewer derives from a loaded volume before it can render: intensity
+ * statistics, the downsampled pyramid used while dragging, and the bricked copy. Each runs once
+ * per load, so these bound how soon a large series becomes interactive.
+ *
+ * mvn -Pbenchmark compile exec:exec -Djmh.args=VolumeBuild
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class VolumeBuildBenchmark {
+
+    @Param({"PAT001", "synthetic"})
+    public String dataset;
+
+    @Param({"512x512x400"})
+    public String size;
+
+    private Volume volume;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        volume = BenchmarkData.series(dataset, size).volume;
+    }
+
+    // What the loader gathers slice by slice during decode, here over the finished volume
+    @Benchmark
+    public VolumeStats stats() {
+        VolumeStats.Builder builder = new VolumeStats.Builder(volume.getWidth(), volume.getHeight(), volume.getDepth(), false);
+        for (int z = 0; z < volume.getDepth(); z++) {
+            builder.addSlice(volume, z);
+        }
+        return builder.build(new boolean[volume.getDepth()]);
+    }
+
+    @Benchmark
+    public VolumePyramid pyramid() {
+        return new VolumePyramid(volume, false);
+    }
+
+    @Benchmark
+    public BrickedVolume bricks() {
+        return new BrickedVolume(volume, 32);
+    }
+}
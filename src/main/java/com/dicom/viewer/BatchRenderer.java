@@ -0,0 +1,336 @@
+package com.dicom.viewer;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless batch rendering: finds every series directory under an input tree, loads each one and
+ * writes windowed axial, coronal and sagittal planes (or thumbnails) as 8-bit PNGs. A bounded
+ * number of series load at once, each with its own decode threads, so memory stays at a few
+ * volumes however many series there are. Needs no display; AWT runs headless.
+ *
+ * Usage: BatchRenderer input-dir output-dir [options], see usage().
+ */
+public class BatchRenderer {
+
+    // A named window; center and width are NaN for the auto windows resolved per series
+    private static final class Window {
+        final String name;
+        final double center, width;
+
+        Window(String name, double center, double width) {
+            this.name = name;
+            this.center = center;
+            this.width = width;
+        }
+    }
+
+    private Path input, output;
+    private Set<Plane> planes = EnumSet.allOf(Plane.class);
+    // Slices per plane, spread evenly; 1 is the middle slice, 0 is every slice
+    private int slices = 1;
+    private final List<Window> windows = new ArrayList<>();
+    // Longest side of the written images, 0 for full resolution
+    private int thumbnail;
+    private int parallelSeries = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int decodeThreads;
+
+    private final AtomicInteger seriesDone = new AtomicInteger(), seriesFailed = new AtomicInteger();
+    private final AtomicLong images = new AtomicLong(), slicesLoaded = new AtomicLong(), voxelBytes = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong(), renderNanos = new AtomicLong();
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BatchRenderer renderer = new BatchRenderer();
+        try {
+            renderer.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage());
+            System.exit(2);
+        }
+        try {
+            System.exit(renderer.run() == 0 ? 0 : 1);
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Batch rendering failed - " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    static String usage() {
+        return String.join("\n",
+                "Usage: BatchRenderer <input-dir> <output-dir> [options]",
+                "  --planes axial,coronal,sagittal  planes to write (default all three)",
+                "  --slices N        slices per plane, evenly spaced; 1 = middle (default), 0 = all",
+                "  --window W[,W..]  default | auto | lung | bone | brain | <center>:<width> (default: default)",
+                "  --thumbnail N     scale images to N pixels on the longer side",
+                "  --parallel N      series loaded at once (default: half the cores)",
+                "  --threads N       decode threads per series (default: cores / parallel)");
+    }
+
+    void parse(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+            String value = args[++i];
+            switch (arg) {
+                case "--planes":
+                    planes = EnumSet.noneOf(Plane.class);
+                    for (String name : value.split(",")) planes.add(parsePlane(name));
+                    break;
+                case "--slices":
+                    slices = parseCount(arg, value, 0);
+                    break;
+                case "--window":
+                    for (String name : value.split(",")) windows.add(parseWindow(name));
+                    break;
+                case "--thumbnail":
+                    thumbnail = parseCount(arg, value, 1);
+                    break;
+                case "--parallel":
+                    parallelSeries = parseCount(arg, value, 1);
+                    break;
+                case "--threads":
+                    decodeThreads = parseCount(arg, value, 1);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (positional.size() != 2) throw new IllegalArgumentException("Expected an input and an output directory");
+        input = Paths.get(positional.get(0));
+        output = Paths.get(positional.get(1));
+        if (windows.isEmpty()) windows.add(parseWindow("default"));
+        if (decodeThreads == 0) {
+            decodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / parallelSeries);
+        }
+    }
+
+    private static Plane parsePlane(String name) {
+        try {
+            return Plane.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown plane " + name);
+        }
+    }
+
+    private static int parseCount(String option, String value, int min) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count >= min) return count;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(option + " needs a whole number of at least " + min + ": " + value);
+    }
+
+    private static Window parseWindow(String spec) {
+        String name = spec.trim().toLowerCase(Locale.ROOT);
+        if (name.equals("default") || name.equals("auto")) return new Window(name, Double.NaN, Double.NaN);
+        for (WindowLut.Preset preset : WindowLut.Preset.values()) {
+            if (preset.label.equalsIgnoreCase(name)) return new Window(name, preset.center, preset.width);
+        }
+        String[] parts = name.split(":");
+        try {
+            if (parts.length == 2) {
+                double center = Double.parseDouble(parts[0]), width = Double.parseDouble(parts[1]);
+                return new Window("c" + parts[0] + "w" + parts[1], center, width);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Unknown window " + spec);
+    }
+
+    // Renders every series; returns the number that failed
+    int run() throws IOException, InterruptedException {
+        List<Path> series = findSeries(input);
+        System.out.printf("Found %d series under %s; %d at a time, %d decode threads each%n",
+                series.size(), input, parallelSeries, decodeThreads);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelSeries, r -> {
+            Thread t = new Thread(r, "batch-series");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> tasks = new ArrayList<>(series.size());
+            for (Path directory : series) {
+                tasks.add(pool.submit(() -> renderSeries(directory, series.size())));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    // Already reported by renderSeries
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int rendered = seriesDone.get() - seriesFailed.get();
+        System.out.printf("Rendered %d images from %d series (%d failed) in %.1f s: %.2f series/s, %.1f images/s, "
+                        + "%.1f slices/s, %.1f MB/s of voxels; load %.1f s, render %.1f s summed over threads%n",
+                images.get(), rendered, seriesFailed.get(), seconds, rendered / seconds,
+                images.get() / seconds, slicesLoaded.get() / seconds, voxelBytes.get() / 1e6 / seconds,
+                loadNanos.get() / 1e9, renderNanos.get() / 1e9);
+        return seriesFailed.get();
+    }
+
+    // Directories holding files that look like DICOM, in path order
+    static List<Path> findSeries(Path root) throws IOException {
+        try (Stream<Path> tree = Files.walk(root)) {
+            return tree.filter(Files::isDirectory)
+                    .filter(directory -> dicomFiles(directory.toFile()).length > 0)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Same filter as the viewer's folder chooser
+    static File[] dicomFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) ->
+                new File(dir, name).isFile() && (name.toLowerCase().endsWith(".dcm")
+                        || name.toLowerCase().endsWith(".dicom") || !name.contains(".")));
+        if (files == null) return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+
+    private void renderSeries(Path directory, int total) {
+        String name = input.relativize(directory).toString();
+        if (name.isEmpty()) name = directory.getFileName().toString();
+        try {
+            long loadStart = System.nanoTime();
+            Series series = new SeriesLoader(decodeThreads).load(dicomFiles(directory.toFile()));
+            long loaded = System.nanoTime();
+            loadNanos.addAndGet(loaded - loadStart);
+            if (series.volume == null) throw new IOException("no decodable slices");
+            slicesLoaded.addAndGet(series.slices.size());
+            voxelBytes.addAndGet(series.volume.sizeInBytes());
+
+            Path target = output.resolve(input.relativize(directory));
+            Files.createDirectories(target);
+            int written = renderImages(series, target);
+            long rendered = System.nanoTime() - loaded;
+            renderNanos.addAndGet(rendered);
+            images.addAndGet(written);
+
+            Volume volume = series.volume;
+            System.out.printf("[%d/%d] %s: %dx%dx%d loaded in %.0f ms, %d images in %.0f ms%n",
+                    seriesDone.incrementAndGet(), total, name, volume.getWidth(), volume.getHeight(), volume.getDepth(),
+                    (loaded - loadStart) / 1e6, written, rendered / 1e6);
+        } catch (IOException | RuntimeException e) {
+            seriesFailed.incrementAndGet();
+            System.err.printf("[%d/%d] %s failed - %s%n", seriesDone.incrementAndGet(), total, name, e.getMessage());
+        }
+    }
+
+    private int renderImages(Series series, Path target) throws IOException {
+        Volume volume = series.volume;
+        DicomSlice first = series.slices.get(0);
+        boolean signed = first.pixelRepresentation == 1;
+        // Thumbnails reformat from the coarsest pyramid level that still covers them
+        PlaneRenderer renderer = new PlaneRenderer(volume, null, null,
+                thumbnail > 0 ? new VolumePyramid(volume, signed) : null);
+        // One table per window for the whole series, not per image
+        WindowLut[] luts = new WindowLut[windows.size()];
+        for (int w = 0; w < luts.length; w++) {
+            luts[w] = lutFor(windows.get(w), series, first, signed);
+        }
+
+        int written = 0;
+        short[] raw = new short[0];
+        for (Plane plane : planes) {
+            int level = thumbnail > 0 ? renderer.levelFor(plane, thumbnail) : 0;
+            Volume source = renderer.getLevel(level);
+            int width = plane.width(source), height = plane.height(source);
+            if (raw.length != width * height) raw = new short[width * height];
+
+            for (int index : sliceIndices(plane.count(volume))) {
+                renderer.extract(plane, index, level, raw);
+                for (int w = 0; w < luts.length; w++) {
+                    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+                    luts[w].apply(raw, ((DataBufferByte) image.getRaster().getDataBuffer()).getData(), raw.length);
+                    String file = String.format("%s_%04d_%s.png", plane.name().toLowerCase(Locale.ROOT), index,
+                            windows.get(w).name);
+                    ImageIO.write(thumbnail > 0 ? scale(image, thumbnail) : image, "png", target.resolve(file).toFile());
+                    written++;
+                }
+            }
+        }
+        return written;
+    }
+
+    // Evenly spaced slice indices, the middle one for a single slice
+    int[] sliceIndices(int count) {
+        if (slices == 0 || slices >= count) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) all[i] = i;
+            return all;
+        }
+        int[] indices = new int[slices];
+        for (int i = 0; i < slices; i++) {
+            indices[i] = (int) ((i + 0.5) * count / slices);
+        }
+        return indices;
+    }
+
+    // "default" is the series' own window, falling back to the auto window when the tags are missing
+    private static WindowLut lutFor(Window window, Series series, DicomSlice first, boolean signed) {
+        double center = window.center, width = window.width;
+        if (window.name.equals("default") && !Double.isNaN(first.windowCenter) && !Double.isNaN(first.windowWidth)
+                && first.windowWidth > 0) {
+            center = first.windowCenter;
+            width = first.windowWidth;
+        } else if (Double.isNaN(center)) {
+            VolumeStats.Window auto = series.stats.autoWindow(first.rescaleSlope, first.rescaleIntercept);
+            center = auto.center;
+            width = auto.width;
+        }
+        return new WindowLut(center, width, first.rescaleSlope, first.rescaleIntercept, signed);
+    }
+
+    // Longer side to size pixels, keeping the aspect ratio
+    private static BufferedImage scale(BufferedImage image, int size) {
+        double factor = (double) size / Math.max(image.getWidth(), image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+}
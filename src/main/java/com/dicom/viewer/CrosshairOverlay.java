@@ -4,6 +4,7 @@ import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.shape.Line;
+import javafx.scene.shape.Rectangle;
 import javafx.event.Event;
 import javafx.event.EventType;
 
@@ -15,6 +16,9 @@ public class CrosshairOverlay extends Pane {
     private boolean isDraggingCenter = false;
     private boolean isDraggingAxisX = false;
     private boolean isDraggingAxisY = false;
+    // Shift-drag on either axis line rotates the other two planes about this view's normal
+    private boolean isRotating = false;
+    private double lastRotateAngle;
     private double lastMouseX, lastMouseY;
     private Color axisXColor = Color.RED;
     private Color axisYColor = Color.LIME;
@@ -30,6 +34,11 @@ public class CrosshairOverlay extends Pane {
         centerPoint.setRadius(6);
         setColorsForView(viewType);
         getChildren().addAll(axisX, axisY, centerPoint);
+        // Rotated axis lines are drawn longer than the view, so keep them inside it
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(widthProperty());
+        clip.heightProperty().bind(heightProperty());
+        setClip(clip);
         setPickOnBounds(false);
         setupMouseHandlers();
     }
@@ -78,35 +87,51 @@ public class CrosshairOverlay extends Pane {
             e.consume();
         });
         axisX.setOnMousePressed(e -> {
-            isDraggingAxisX = true;
+            if (e.isShiftDown()) {
+                startRotation(e.getX(), e.getY());
+            } else {
+                isDraggingAxisX = true;
+            }
             lastMouseX = e.getX();
             lastMouseY = e.getY();
             e.consume();
         });
         axisX.setOnMouseDragged(e -> {
-            if (isDraggingAxisX) {
-                onAxisXDragged(e.getY());
+            if (isRotating) {
+                onRotateDragged(e.getX(), e.getY());
+                e.consume();
+            } else if (isDraggingAxisX) {
+                onAxisXDragged(e.getX(), e.getY());
                 e.consume();
             }
         });
         axisX.setOnMouseReleased(e -> {
             isDraggingAxisX = false;
+            isRotating = false;
             e.consume();
         });
         axisY.setOnMousePressed(e -> {
-            isDraggingAxisY = true;
+            if (e.isShiftDown()) {
+                startRotation(e.getX(), e.getY());
+            } else {
+                isDraggingAxisY = true;
+            }
             lastMouseX = e.getX();
             lastMouseY = e.getY();
             e.consume();
         });
         axisY.setOnMouseDragged(e -> {
-            if (isDraggingAxisY) {
-                onAxisYDragged(e.getX());
+            if (isRotating) {
+                onRotateDragged(e.getX(), e.getY());
+                e.consume();
+            } else if (isDraggingAxisY) {
+                onAxisYDragged(e.getX(), e.getY());
                 e.consume();
             }
         });
         axisY.setOnMouseReleased(e -> {
             isDraggingAxisY = false;
+            isRotating = false;
             e.consume();
         });
     }
@@ -120,12 +145,26 @@ public class CrosshairOverlay extends Pane {
         }
     }
 
-    private void onAxisXDragged(double y) {
-        fireCrosshairMoved(centerPoint.getCenterX(), y, "axisX");
+    // Orthogonal views only use y of an axisX drag and x of an axisY drag; oblique views use both
+    private void onAxisXDragged(double x, double y) {
+        fireCrosshairMoved(x, y, "axisX");
+    }
+
+    private void onAxisYDragged(double x, double y) {
+        fireCrosshairMoved(x, y, "axisY");
+    }
+
+    private void startRotation(double x, double y) {
+        isRotating = true;
+        lastRotateAngle = Math.atan2(y - centerPoint.getCenterY(), x - centerPoint.getCenterX());
     }
 
-    private void onAxisYDragged(double x) {
-        fireCrosshairMoved(x, centerPoint.getCenterY(), "axisY");
+    // Reports the change in angle around the center since the last drag step
+    private void onRotateDragged(double x, double y) {
+        double angle = Math.atan2(y - centerPoint.getCenterY(), x - centerPoint.getCenterX());
+        double delta = Math.IEEEremainder(angle - lastRotateAngle, 2 * Math.PI);
+        lastRotateAngle = angle;
+        fireEvent(new CrosshairMoveEvent(x, y, viewType, "rotate", delta));
     }
 
     private void fireCrosshairMoved(double x, double y, String dragType) {
@@ -133,18 +172,34 @@ public class CrosshairOverlay extends Pane {
     }
 
     public void updatePosition(double x, double y) {
-        axisX.setStartX(0);
-        axisX.setEndX(getWidth() > 0 ? getWidth() : VIEW_SIZE);
-        axisX.setStartY(y);
-        axisX.setEndY(y);
-        axisY.setStartX(x);
-        axisY.setEndX(x);
-        axisY.setStartY(0);
-        axisY.setEndY(getHeight() > 0 ? getHeight() : VIEW_SIZE);
+        updatePosition(x, y, 0, Math.PI / 2);
+    }
+
+    // Axis lines through (x, y) at the given angles (radians, x right, y down), long enough to cross the view
+    public void updatePosition(double x, double y, double angleX, double angleY) {
+        double width = getWidth() > 0 ? getWidth() : VIEW_SIZE;
+        double height = getHeight() > 0 ? getHeight() : VIEW_SIZE;
+        if (angleX == 0 && angleY == Math.PI / 2) {
+            setLine(axisX, 0, y, width, y);
+            setLine(axisY, x, 0, x, height);
+        } else {
+            double reach = Math.hypot(width, height);
+            setLine(axisX, x - reach * Math.cos(angleX), y - reach * Math.sin(angleX),
+                    x + reach * Math.cos(angleX), y + reach * Math.sin(angleX));
+            setLine(axisY, x - reach * Math.cos(angleY), y - reach * Math.sin(angleY),
+                    x + reach * Math.cos(angleY), y + reach * Math.sin(angleY));
+        }
         centerPoint.setCenterX(x);
         centerPoint.setCenterY(y);
     }
 
+    private static void setLine(Line line, double startX, double startY, double endX, double endY) {
+        line.setStartX(startX);
+        line.setStartY(startY);
+        line.setEndX(endX);
+        line.setEndY(endY);
+    }
+
     public void setAxisLinesVisible(boolean visible) {
         axisX.setVisible(visible);
         axisY.setVisible(visible);
@@ -166,16 +221,23 @@ public class CrosshairOverlay extends Pane {
         private final double x, y;
         private final String viewType;
         private final String dragType;
+        private final double angle;
         public CrosshairMoveEvent(double x, double y, String viewType, String dragType) {
+            this(x, y, viewType, dragType, 0);
+        }
+        public CrosshairMoveEvent(double x, double y, String viewType, String dragType, double angle) {
             super(CROSSHAIR_MOVED);
             this.x = x;
             this.y = y;
             this.viewType = viewType;
             this.dragType = dragType;
+            this.angle = angle;
         }
         public double getX() { return x; }
         public double getY() { return y; }
         public String getViewType() { return viewType; }
         public String getDragType() { return dragType; }
+        // Rotation step in radians for "rotate" drags
+        public double getAngle() { return angle; }
     }
 } 
\ No newline at end of file
@@ -1,17 +1,39 @@
 package com.dicom.viewer;
 
-import java.awt.image.BufferedImage;
+import java.io.File;
 
-public class DicomSlice {
-    public BufferedImage image;
-    public short[][] pixelData;
+// Geometry and pixel-layout metadata of one slice; the voxels themselves live in the Volume
+public class DicomSlice implements Cloneable {
     public double[] imagePosition = new double[3];
     public double[] imageOrientation = new double[6];
     public double[] pixelSpacing = new double[2];
     public double sliceThickness = 1.0;
     public int rows, columns;
     public String instanceUID;
-    public int sliceLocation;
-    public double windowCenter = 128;
-    public double windowWidth = 256;
+    // NaN when the file has no WindowCenter/WindowWidth; the viewer then windows from VolumeStats
+    public double windowCenter = Double.NaN;
+    public double windowWidth = Double.NaN;
+    public double rescaleSlope = 1.0;
+    public double rescaleIntercept = 0.0;
+    public File file;
+    // Frame of file this slice is, out of frames; multi-frame objects give one slice per frame
+    public int frame;
+    public int frames = 1;
+    public String transferSyntaxUID;
+    public int samplesPerPixel = 1;
+    public int planarConfiguration;
+    public int bitsAllocated = 16;
+    public int bitsStored = 16;
+    public int pixelRepresentation;
+    public long pixelDataOffset = -1; // file offset of this frame's native pixels
+    public int pixelDataLength = -1; // -1 for encapsulated (compressed) pixel data
+
+    // Shallow copy: the arrays are shared, so replace them rather than modify them in place
+    public DicomSlice copy() {
+        try {
+            return (DicomSlice) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
 } 
\ No newline at end of file
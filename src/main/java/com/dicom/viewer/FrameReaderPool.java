@@ -0,0 +1,84 @@
+package com.dicom.viewer;
+
+import org.dcm4che3.imageio.plugins.dcm.DicomImageReader;
+import org.dcm4che3.imageio.plugins.dcm.DicomImageReaderSpi;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DicomImageReaders left open on the multi-frame files of one load. A reader parses the header
+ * and indexes the frame fragments once, then seeks straight to any frame, so frames decode in
+ * parallel without each of them reading the file from the start. Readers are not thread-safe:
+ * each is lent to one decode thread at a time, and a file's readers are closed as soon as its
+ * last frame has been returned.
+ */
+public class FrameReaderPool implements AutoCloseable {
+
+    private static final class Entry {
+        final Queue<DicomImageReader> idle = new ConcurrentLinkedQueue<>();
+        final Queue<DicomImageReader> all = new ConcurrentLinkedQueue<>();
+        final AtomicInteger remaining;
+
+        Entry(int frames) {
+            this.remaining = new AtomicInteger(frames);
+        }
+    }
+
+    private final Map<File, Entry> entries = new ConcurrentHashMap<>();
+
+    // Announces that frames frames of file will be read, before the first acquire
+    public void expect(File file, int frames) {
+        entries.computeIfAbsent(file, f -> new Entry(0)).remaining.addAndGet(frames);
+    }
+
+    public DicomImageReader acquire(File file) throws IOException {
+        Entry entry = entries.get(file);
+        DicomImageReader reader = entry.idle.poll();
+        if (reader != null) return reader;
+
+        reader = new DicomImageReader(new DicomImageReaderSpi());
+        reader.setInput(new FileImageInputStream(file));
+        entry.all.add(reader);
+        return reader;
+    }
+
+    // Hands a reader back after one frame, decoded or not
+    public void release(File file, DicomImageReader reader) {
+        Entry entry = entries.get(file);
+        entry.idle.add(reader);
+        if (entry.remaining.decrementAndGet() == 0) {
+            entries.remove(file);
+            closeAll(entry);
+        }
+    }
+
+    // Closes the readers of frames that were never read, after a cancelled or failed load
+    @Override
+    public void close() {
+        for (Entry entry : entries.values()) {
+            closeAll(entry);
+        }
+        entries.clear();
+    }
+
+    private static void closeAll(Entry entry) {
+        DicomImageReader reader;
+        while ((reader = entry.all.poll()) != null) {
+            Object input = reader.getInput();
+            reader.dispose();
+            try {
+                if (input instanceof ImageInputStream) ((ImageInputStream) input).close();
+            } catch (IOException e) {
+                // Nothing useful to do; the file was only read
+            }
+        }
+    }
+}
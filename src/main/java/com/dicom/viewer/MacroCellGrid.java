@@ -0,0 +1,73 @@
+package com.dicom.viewer;
+
+import java.nio.ShortBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Minimum and maximum stored value of every CELL_SIZE^3 block of a volume, so a ray caster can
+ * step over blocks a transfer function makes fully transparent. Each cell's range also covers the
+ * first voxel of the next cell, which trilinear samples inside the cell can reach.
+ */
+public class MacroCellGrid {
+
+    public static final int CELL_SHIFT = 3;
+    public static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+    private final int cellsX, cellsY, cellsZ;
+    private final int[] min, max;
+
+    public MacroCellGrid(Volume volume, boolean signed) {
+        cellsX = (volume.getWidth() + CELL_SIZE - 1) >> CELL_SHIFT;
+        cellsY = (volume.getHeight() + CELL_SIZE - 1) >> CELL_SHIFT;
+        cellsZ = (volume.getDepth() + CELL_SIZE - 1) >> CELL_SHIFT;
+        int cells = cellsX * cellsY * cellsZ;
+        min = new int[cells];
+        max = new int[cells];
+        // One cell layer per task, each writing only its own cells
+        IntStream.range(0, cellsZ).parallel().forEach(cz -> fillLayer(volume, signed, cz));
+    }
+
+    private void fillLayer(Volume volume, boolean signed, int cz) {
+        ShortBuffer voxels = volume.getVoxels();
+        int mask = signed ? -1 : 0xFFFF;
+        int w = volume.getWidth(), h = volume.getHeight(), d = volume.getDepth();
+        for (int cy = 0; cy < cellsY; cy++) {
+            for (int cx = 0; cx < cellsX; cx++) {
+                int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+                int x1 = Math.min(w - 1, (cx + 1) << CELL_SHIFT);
+                int y1 = Math.min(h - 1, (cy + 1) << CELL_SHIFT);
+                int z1 = Math.min(d - 1, (cz + 1) << CELL_SHIFT);
+                for (int z = cz << CELL_SHIFT; z <= z1; z++) {
+                    for (int y = cy << CELL_SHIFT; y <= y1; y++) {
+                        int base = volume.index(0, y, z);
+                        for (int x = cx << CELL_SHIFT; x <= x1; x++) {
+                            int v = voxels.get(base + x) & mask;
+                            lo = Math.min(lo, v);
+                            hi = Math.max(hi, v);
+                        }
+                    }
+                }
+                int cell = index(cx, cy, cz);
+                min[cell] = lo;
+                max[cell] = hi;
+            }
+        }
+    }
+
+    public int getCellsX() { return cellsX; }
+    public int getCellsY() { return cellsY; }
+    public int getCellsZ() { return cellsZ; }
+
+    public int index(int cx, int cy, int cz) {
+        return (cz * cellsY + cy) * cellsX + cx;
+    }
+
+    // One flag per cell: true when the transfer function hides every value in it
+    public boolean[] transparentCells(TransferFunction tf) {
+        boolean[] empty = new boolean[min.length];
+        for (int i = 0; i < empty.length; i++) {
+            empty[i] = tf.isTransparent(min[i], max[i]);
+        }
+        return empty;
+    }
+}
@@ -0,0 +1,116 @@
+package com.dicom.viewer;
+
+/**
+ * An arbitrary plane through the volume in patient coordinates (mm): an image center, unit
+ * vectors along the image's rows (u, to the right) and columns (v, downwards), and the size and
+ * spacing of the output pixels. Immutable; moves and rotations return a new plane, so render
+ * threads can hold on to the one they were given.
+ */
+public class ObliquePlane {
+    private final double[] center;
+    private final double[] u, v, normal;
+    private final int width, height;
+    private final double pixelSpacing;
+
+    public ObliquePlane(double[] center, double[] u, double[] v, int width, int height, double pixelSpacing) {
+        this.center = center.clone();
+        this.u = normalize(u);
+        this.v = normalize(v);
+        this.normal = normalize(cross(this.u, this.v));
+        this.width = width;
+        this.height = height;
+        this.pixelSpacing = pixelSpacing;
+    }
+
+    public double[] getCenter() { return center.clone(); }
+    public double[] getU() { return u.clone(); }
+    public double[] getV() { return v.clone(); }
+    public double[] getNormal() { return normal.clone(); }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public double getPixelSpacing() { return pixelSpacing; }
+
+    // Patient position of output pixel (x, y), pixel centers at integer coordinates
+    public double[] pointAt(double x, double y) {
+        double[] p = new double[3];
+        pointAt(x, y, p);
+        return p;
+    }
+
+    // Same, written into out[0..2]
+    public void pointAt(double x, double y, double[] out) {
+        double du = (x - (width - 1) / 2.0) * pixelSpacing;
+        double dv = (y - (height - 1) / 2.0) * pixelSpacing;
+        for (int i = 0; i < 3; i++) {
+            out[i] = center[i] + du * u[i] + dv * v[i];
+        }
+    }
+
+    // Output pixel coordinates of a patient position projected onto the plane
+    public double[] toPixel(double[] p) {
+        double[] d = subtract(p, center);
+        return new double[] {
+                dot(d, u) / pixelSpacing + (width - 1) / 2.0,
+                dot(d, v) / pixelSpacing + (height - 1) / 2.0
+        };
+    }
+
+    // Same orientation, slid along the normal until it passes through p; the image does not pan
+    public ObliquePlane through(double[] p) {
+        double offset = dot(subtract(p, center), normal);
+        double[] c = new double[3];
+        for (int i = 0; i < 3; i++) c[i] = center[i] + offset * normal[i];
+        return new ObliquePlane(c, u, v, width, height, pixelSpacing);
+    }
+
+    // Rotated by angle radians about an axis through pivot, right-handed
+    public ObliquePlane rotated(double[] pivot, double[] axis, double angle) {
+        double[] k = normalize(axis);
+        double[] c = add(pivot, rotate(subtract(center, pivot), k, angle));
+        return new ObliquePlane(c, rotate(u, k, angle), rotate(v, k, angle), width, height, pixelSpacing);
+    }
+
+    // Angle in the image (x right, y down) of the line where another plane cuts this one
+    public double intersectionAngle(ObliquePlane other) {
+        double[] d = cross(normal, other.normal);
+        return Math.atan2(dot(d, v), dot(d, u));
+    }
+
+    // Rodrigues' rotation of vector a about unit axis k
+    private static double[] rotate(double[] a, double[] k, double angle) {
+        double cos = Math.cos(angle), sin = Math.sin(angle);
+        double[] kxa = cross(k, a);
+        double kda = dot(k, a);
+        double[] r = new double[3];
+        for (int i = 0; i < 3; i++) {
+            r[i] = a[i] * cos + kxa[i] * sin + k[i] * kda * (1 - cos);
+        }
+        return r;
+    }
+
+    static double dot(double[] a, double[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+
+    static double[] cross(double[] a, double[] b) {
+        return new double[] {
+                a[1] * b[2] - a[2] * b[1],
+                a[2] * b[0] - a[0] * b[2],
+                a[0] * b[1] - a[1] * b[0]
+        };
+    }
+
+    private static double[] add(double[] a, double[] b) {
+        return new double[] {a[0] + b[0], a[1] + b[1], a[2] + b[2]};
+    }
+
+    private static double[] subtract(double[] a, double[] b) {
+        return new double[] {a[0] - b[0], a[1] - b[1], a[2] - b[2]};
+    }
+
+    private static double[] normalize(double[] a) {
+        double length = Math.sqrt(dot(a, a));
+        if (length == 0) throw new IllegalArgumentException("Zero-length direction");
+        return new double[] {a[0] / length, a[1] / length, a[2] / length};
+    }
+}
@@ -0,0 +1,90 @@
+package com.dicom.viewer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder events around the hot paths, so a recording shows whether slow scrolling is
+ * spent decoding, reformatting, uploading or redrawing overlays. Start one with
+ * -XX:StartFlightRecording or jcmd JFR.start and open it in JDK Mission Control. While no
+ * recording asks for an event, begin() and commit() return at once and the JIT drops the event
+ * object, so instrumented code costs next to nothing.
+ */
+public final class PerfEvents {
+
+    private PerfEvents() {
+    }
+
+    @Name("com.dicom.viewer.LoadStage")
+    @Label("Series Load Stage")
+    @Category({"DICOM Viewer", "Loading"})
+    @Description("One stage of loading a series: cache lookup, header scan, pixel decode or statistics")
+    public static final class LoadStage extends Event {
+        @Label("Stage")
+        public String stage;
+        @Label("Slices")
+        public int slices;
+
+        public LoadStage(String stage) {
+            this.stage = stage;
+        }
+    }
+
+    @Name("com.dicom.viewer.SliceDecode")
+    @Label("Slice Decode")
+    @Category({"DICOM Viewer", "Loading"})
+    @Description("Pixels of one slice or frame written into the volume")
+    public static final class SliceDecode extends Event {
+        @Label("Slice")
+        public int slice;
+        @Label("Transfer Syntax")
+        public String transferSyntax;
+        @Label("Raw Copy")
+        public boolean raw;
+    }
+
+    @Name("com.dicom.viewer.PlaneReformat")
+    @Label("Plane Reformat")
+    @Category({"DICOM Viewer", "Rendering"})
+    @Description("Voxels of one view gathered from the volume and windowed into a frame")
+    public static final class PlaneReformat extends Event {
+        @Label("Plane")
+        public String plane;
+        @Label("Kind")
+        @Description("slice, level, slab or oblique")
+        public String kind;
+        @Label("Index")
+        public int index;
+        @Label("Pyramid Level")
+        public int level;
+        @Label("Pixels")
+        public int pixels;
+    }
+
+    @Name("com.dicom.viewer.ImageUpload")
+    @Label("Image Upload")
+    @Category({"DICOM Viewer", "Rendering"})
+    @Description("A finished frame copied into the view's pixel buffer on the FX thread")
+    public static final class ImageUpload extends Event {
+        @Label("Plane")
+        public String plane;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("com.dicom.viewer.OverlayRedraw")
+    @Label("Overlay Redraw")
+    @Category({"DICOM Viewer", "Rendering"})
+    @Description("Measurements of one view, or the crosshairs and labels of all views, redrawn on the FX thread")
+    public static final class OverlayRedraw extends Event {
+        @Label("Overlay")
+        public String overlay;
+        @Label("Plane")
+        public String plane;
+    }
+}
@@ -0,0 +1,118 @@
+package com.dicom.viewer;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Toolbar readout of frame rate, frame time percentiles, input events coalesced per scheduled
+ * frame, cache hit rates and evictions, and resident volume size; the tooltip has the full
+ * counters of the cache, prefetcher and scheduler since startup. Frame time is the latency from a view's render request to its frame reaching the pixel
+ * buffer, which is what the user feels while scrolling. While hidden, recordFrame() returns
+ * after one field check and the refresh timer is stopped. FX thread only.
+ */
+public class PerfHud {
+
+    // Frame times kept for the percentiles, the newest overwriting the oldest
+    private static final int WINDOW = 256;
+    private static final long REFRESH_NANOS = 500_000_000L;
+
+    private final RenderCache cache;
+    private final SlicePrefetcher prefetcher;
+    private final RenderScheduler scheduler;
+    private final LongSupplier residentBytes;
+    private final Label label = new Label();
+    private final Tooltip details = new Tooltip();
+    private final long[] frameNanos = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int recorded, next;
+    private boolean enabled;
+    private long framesSinceRefresh, lastRefreshNanos;
+    // Scheduler counters at the last refresh, so the ratio covers one refresh interval
+    private long lastEvents, lastScheduledFrames;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (now - lastRefreshNanos >= REFRESH_NANOS) refresh(now);
+        }
+    };
+
+    public PerfHud(RenderCache cache, SlicePrefetcher prefetcher, RenderScheduler scheduler, LongSupplier residentBytes) {
+        this.cache = cache;
+        this.prefetcher = prefetcher;
+        this.scheduler = scheduler;
+        this.residentBytes = residentBytes;
+        label.setId("perfHud");
+        label.setTooltip(details);
+        label.setVisible(false);
+        label.setManaged(false);
+    }
+
+    public Label getLabel() {
+        return label;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (enabled == this.enabled) return;
+        this.enabled = enabled;
+        label.setVisible(enabled);
+        label.setManaged(enabled);
+        if (enabled) {
+            recorded = 0;
+            next = 0;
+            framesSinceRefresh = 0;
+            lastEvents = scheduler.getEvents();
+            lastScheduledFrames = scheduler.getFrames();
+            refresh(System.nanoTime());
+            timer.start();
+        } else {
+            timer.stop();
+        }
+    }
+
+    // One frame presented, requestNanos being the System.nanoTime() of its render request
+    public void recordFrame(long requestNanos) {
+        if (!enabled) return;
+        frameNanos[next] = System.nanoTime() - requestNanos;
+        next = (next + 1) % WINDOW;
+        recorded = Math.min(recorded + 1, WINDOW);
+        framesSinceRefresh++;
+    }
+
+    private void refresh(long now) {
+        double seconds = (now - lastRefreshNanos) / 1e9;
+        double fps = lastRefreshNanos == 0 || seconds <= 0 ? 0 : framesSinceRefresh / seconds;
+        framesSinceRefresh = 0;
+        lastRefreshNanos = now;
+        long events = scheduler.getEvents() - lastEvents;
+        long scheduled = scheduler.getFrames() - lastScheduledFrames;
+        lastEvents += events;
+        lastScheduledFrames += scheduled;
+
+        String times = "-";
+        if (recorded > 0) {
+            System.arraycopy(frameNanos, 0, sorted, 0, recorded);
+            Arrays.sort(sorted, 0, recorded);
+            times = String.format("%.1f/%.1f ms", percentile(0.50) / 1e6, percentile(0.99) / 1e6);
+        }
+        label.setText(String.format("%.0f fps | p50/p99 %s | %.1f events/frame | cache %.0f%% (%d evicted) "
+                        + "prefetch %.0f%% | %.0f MB resident",
+                fps, times, scheduled == 0 ? 0.0 : (double) events / scheduled, cache.hitRate() * 100,
+                cache.getEvictions(), prefetcher.hitRate() * 100, residentBytes.getAsLong() / 1e6));
+        details.setText(cache + "\n" + prefetcher + "\n" + scheduler);
+    }
+
+    // Nearest-rank percentile of the sorted frame times
+    private long percentile(double p) {
+        int rank = (int) Math.ceil(p * recorded) - 1;
+        return sorted[Math.max(0, Math.min(recorded - 1, rank))];
+    }
+}
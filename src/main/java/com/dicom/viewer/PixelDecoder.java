@@ -0,0 +1,199 @@
+package com.dicom.viewer;
+
+import org.dcm4che3.data.UID;
+import org.dcm4che3.imageio.plugins.dcm.DicomImageReader;
+import org.dcm4che3.imageio.plugins.dcm.DicomImageReaderSpi;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Turns the pixel data of one slice into voxels of the volume. Native (uncompressed) transfer
+ * syntaxes are copied straight out of the PixelData element; everything else goes through
+ * DicomImageReader. Compressed frames of multi-frame files are read by pooled readers that stay
+ * open on the file, rather than reading the whole file once per frame.
+ */
+public class PixelDecoder {
+
+    // Uncompressed PixelData can be copied as-is when the samples are 8 or 16 bits wide
+    public static boolean isRaw(DicomSlice slice) {
+        String ts = slice.transferSyntaxUID;
+        boolean nativeSyntax = UID.ImplicitVRLittleEndian.equals(ts)
+                || UID.ExplicitVRLittleEndian.equals(ts)
+                || UID.ExplicitVRBigEndian.equals(ts);
+        return nativeSyntax
+                && slice.pixelDataOffset > 0
+                && (slice.bitsAllocated == 8 || slice.bitsAllocated == 16)
+                && slice.pixelDataLength >= rawLength(slice);
+    }
+
+    // Bytes of one native frame
+    static int rawLength(DicomSlice slice) {
+        return slice.rows * slice.columns * slice.samplesPerPixel * (slice.bitsAllocated / 8);
+    }
+
+    /**
+     * Reads what decoding needs: just the frame's pixels for raw slices, otherwise the whole
+     * file. Returns null for a compressed frame of a multi-frame file, which a pooled reader
+     * decodes straight from the file.
+     */
+    public static ByteBuffer readSource(DicomSlice slice) throws IOException {
+        if (!isRaw(slice)) {
+            if (slice.frames > 1) return null;
+            return ByteBuffer.wrap(Files.readAllBytes(slice.file.toPath()));
+        }
+        ByteBuffer pixels = ByteBuffer.allocate(rawLength(slice));
+        try (FileChannel channel = FileChannel.open(slice.file.toPath(), StandardOpenOption.READ)) {
+            long position = slice.pixelDataOffset;
+            while (pixels.hasRemaining()) {
+                int n = channel.read(pixels, position);
+                if (n < 0) throw new IOException("Truncated pixel data");
+                position += n;
+            }
+        }
+        pixels.flip();
+        return pixels;
+    }
+
+    // source is what readSource returned; readers must expect slice.file when it was null
+    public static void decode(DicomSlice slice, ByteBuffer source, Volume volume, int z, FrameReaderPool readers)
+            throws IOException {
+        PerfEvents.SliceDecode event = new PerfEvents.SliceDecode();
+        event.begin();
+        boolean raw = isRaw(slice);
+        if (raw) {
+            ingestRaw(slice, source, volume, z);
+        } else if (source == null) {
+            decodeFrame(slice, readers, volume, z);
+        } else {
+            decodeWithImageReader(slice, source.array(), volume, z);
+        }
+        if (event.shouldCommit()) {
+            event.slice = z;
+            event.transferSyntax = slice.transferSyntaxUID;
+            event.raw = raw;
+            event.commit();
+        }
+    }
+
+    // Bulk copy of native pixel data with byte-order conversion done by the buffer views
+    static void ingestRaw(DicomSlice slice, ByteBuffer pixels, Volume volume, int z) {
+        ByteOrder order = UID.ExplicitVRBigEndian.equals(slice.transferSyntaxUID)
+                ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        ShortBuffer voxels = volume.getVoxels();
+        int sliceSize = volume.getSliceStride();
+        int base = volume.index(0, 0, z);
+        int samples = slice.samplesPerPixel;
+        // Only the first sample of each pixel is kept, as with the first band of a decoded raster
+        boolean interleaved = samples > 1 && slice.planarConfiguration == 0;
+
+        if (slice.bitsAllocated == 16) {
+            ShortBuffer src = pixels.order(order).asShortBuffer();
+            if (!interleaved) {
+                // Single sample or colour-by-plane: the first plane is contiguous
+                voxels.put(base, src, 0, sliceSize);
+            } else {
+                for (int i = 0; i < sliceSize; i++) {
+                    voxels.put(base + i, src.get(i * samples));
+                }
+            }
+        } else {
+            int step = interleaved ? samples : 1;
+            boolean signed = slice.pixelRepresentation == 1;
+            for (int i = 0; i < sliceSize; i++) {
+                byte b = pixels.get(i * step);
+                voxels.put(base + i, signed ? b : (short) (b & 0xFF));
+            }
+        }
+
+        if (slice.bitsStored < slice.bitsAllocated && slice.bitsAllocated == 16) {
+            maskStoredBits(voxels, base, sliceSize, slice.bitsStored, slice.pixelRepresentation == 1);
+        }
+    }
+
+    // Clears the unused high bits, sign-extending from BitsStored for signed data
+    private static void maskStoredBits(ShortBuffer voxels, int base, int count, int bitsStored, boolean signed) {
+        int shift = 16 - bitsStored;
+        int mask = (1 << bitsStored) - 1;
+        for (int i = base; i < base + count; i++) {
+            int v = voxels.get(i);
+            voxels.put(i, signed ? (short) ((short) (v << shift) >> shift) : (short) (v & mask));
+        }
+    }
+
+    static void decodeWithImageReader(DicomSlice slice, byte[] data, Volume volume, int z) throws IOException {
+        // Decode from the bytes already in memory instead of going back to disk
+        ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(data));
+        DicomImageReader reader = new DicomImageReader(new DicomImageReaderSpi());
+        try {
+            reader.setInput(iis);
+
+            // Stored values, as on the raw path; read() would apply display LUTs and build a BufferedImage
+            Raster raster = reader.readRaster(0, null);
+            copyRaster(raster, volume, z);
+        } finally {
+            reader.dispose();
+            iis.close();
+        }
+    }
+
+    static void decodeFrame(DicomSlice slice, FrameReaderPool readers, Volume volume, int z) throws IOException {
+        DicomImageReader reader = readers.acquire(slice.file);
+        try {
+            copyRaster(reader.readRaster(slice.frame, null), volume, z);
+        } finally {
+            readers.release(slice.file, reader);
+        }
+    }
+
+    // Copies band 0 of a decoded raster straight into slice z of the volume
+    static void copyRaster(Raster raster, Volume volume, int z) {
+        int width = volume.getWidth();
+        int height = volume.getHeight();
+        ShortBuffer voxels = volume.getVoxels();
+        int base = volume.index(0, 0, z);
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+
+        // 16-bit single-band rasters: copy whole rows out of the backing array
+        if (sampleModel instanceof ComponentSampleModel && sampleModel.getNumBands() == 1
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && (dataBuffer instanceof DataBufferUShort || dataBuffer instanceof DataBufferShort)) {
+            ComponentSampleModel csm = (ComponentSampleModel) sampleModel;
+            if (csm.getPixelStride() == 1) {
+                short[] data = dataBuffer instanceof DataBufferUShort
+                        ? ((DataBufferUShort) dataBuffer).getData()
+                        : ((DataBufferShort) dataBuffer).getData();
+                int offset = dataBuffer.getOffset() + csm.getOffset(0, 0);
+                for (int y = 0; y < height; y++) {
+                    voxels.put(base + y * width, data, offset + y * csm.getScanlineStride(), width);
+                }
+                return;
+            }
+        }
+
+        // Anything else (8-bit, multi-band): go through the sample model a row at a time
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(raster.getMinX(), raster.getMinY() + y, width, 1, 0, row);
+            int rowBase = base + y * width;
+            for (int x = 0; x < width; x++) {
+                voxels.put(rowBase + x, (short) row[x]);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.dicom.viewer;
+
+// The three orthogonal reformats and the size of their images for a given volume
+public enum Plane {
+    AXIAL, CORONAL, SAGITTAL;
+
+    // Image width in pixels
+    public int width(Volume volume) {
+        return this == SAGITTAL ? volume.getHeight() : volume.getWidth();
+    }
+
+    // Image height in pixels
+    public int height(Volume volume) {
+        return this == AXIAL ? volume.getHeight() : volume.getDepth();
+    }
+
+    // Number of slices along the plane normal
+    public int count(Volume volume) {
+        switch (this) {
+            case AXIAL: return volume.getDepth();
+            case CORONAL: return volume.getHeight();
+            default: return volume.getWidth();
+        }
+    }
+}
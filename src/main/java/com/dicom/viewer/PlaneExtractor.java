@@ -0,0 +1,58 @@
+package com.dicom.viewer;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Copies one plane of raw voxels out of a volume in display orientation: axial as stored,
+ * coronal and sagittal with the first slice at the bottom.
+ */
+public class PlaneExtractor {
+
+    public static short[] extract(Volume volume, Plane plane, int index) {
+        short[] out = new short[plane.width(volume) * plane.height(volume)];
+        extract(volume, plane, index, out);
+        return out;
+    }
+
+    public static void extract(Volume volume, Plane plane, int index, short[] out) {
+        switch (plane) {
+            case AXIAL:
+                extractAxial(volume, index, out);
+                break;
+            case CORONAL:
+                extractCoronal(volume, index, out);
+                break;
+            case SAGITTAL:
+                extractSagittal(volume, index, out);
+                break;
+        }
+    }
+
+    private static void extractAxial(Volume volume, int z, short[] out) {
+        volume.getVoxels().get(volume.index(0, 0, z), out, 0, volume.getSliceStride());
+    }
+
+    private static void extractCoronal(Volume volume, int y, short[] out) {
+        ShortBuffer voxels = volume.getVoxels();
+        int width = volume.getWidth();
+        int depth = volume.getDepth();
+        for (int z = 0; z < depth; z++) {
+            // One image row is one contiguous run of the volume
+            voxels.get(volume.index(0, y, z), out, (depth - 1 - z) * width, width);
+        }
+    }
+
+    private static void extractSagittal(Volume volume, int x, short[] out) {
+        ShortBuffer voxels = volume.getVoxels();
+        int height = volume.getHeight();
+        int depth = volume.getDepth();
+        int rowStride = volume.getRowStride();
+        for (int z = 0; z < depth; z++) {
+            int base = volume.index(x, 0, z);
+            int outBase = (depth - 1 - z) * height;
+            for (int y = 0; y < height; y++) {
+                out[outBase + y] = voxels.get(base + y * rowStride);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.dicom.viewer;
+
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * The on-screen image of one view: a WritableImage over a PixelBuffer the renderer writes into
+ * directly. The buffer is only reallocated when the plane size changes, so steady-state
+ * rendering allocates nothing. Must be used on the FX application thread.
+ */
+public class PlaneImage {
+    private int width, height;
+    private IntBuffer pixels;
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    private WritableImage image;
+
+    // Returns true when a new image was created and has to be set on the ImageView
+    public boolean resize(int width, int height) {
+        if (image != null && width == this.width && height == this.height) return false;
+
+        this.width = width;
+        this.height = height;
+        pixels = ByteBuffer.allocateDirect(width * height * Integer.BYTES)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        pixelBuffer = new PixelBuffer<>(width, height, pixels, PixelFormat.getIntArgbPreInstance());
+        image = new WritableImage(pixelBuffer);
+        return true;
+    }
+
+    public WritableImage getImage() {
+        return image;
+    }
+
+    // Copies a rendered frame into the buffer and tells JavaFX the whole image changed
+    public void render(RenderCache.Frame frame) {
+        pixels.put(0, frame.pixels, 0, width * height);
+        pixelBuffer.updateBuffer(b -> null);
+    }
+}
@@ -0,0 +1,79 @@
+package com.dicom.viewer;
+
+/**
+ * Reformats and windows planes of one volume, reading the bricked copy when there is one, and
+ * resamples oblique planes. With a pyramid, planes can also be reformatted from a downsampled
+ * level. Only reads voxels, so any number of threads can render from the same instance.
+ */
+public class PlaneRenderer {
+    private final Volume volume;
+    private final BrickedVolume bricks;
+    private final ObliqueSampler oblique;
+    private final VolumePyramid pyramid;
+
+    public PlaneRenderer(Volume volume, BrickedVolume bricks, ObliqueSampler oblique) {
+        this(volume, bricks, oblique, null);
+    }
+
+    public PlaneRenderer(Volume volume, BrickedVolume bricks, ObliqueSampler oblique, VolumePyramid pyramid) {
+        this.volume = volume;
+        this.bricks = bricks;
+        this.oblique = oblique;
+        this.pyramid = pyramid;
+    }
+
+    public Volume getVolume() {
+        return volume;
+    }
+
+    public int planeSize(Plane plane) {
+        return plane.width(volume) * plane.height(volume);
+    }
+
+    // Coarsest level that still fills a view of pixels along its longer side; 0 without a pyramid
+    public int levelFor(Plane plane, double pixels) {
+        return pyramid != null ? pyramid.levelFor(plane, pixels) : 0;
+    }
+
+    // Level 0 is the full-resolution volume
+    public Volume getLevel(int level) {
+        return level == 0 ? volume : pyramid.getLevel(level);
+    }
+
+    public void extract(Plane plane, int index, short[] out) {
+        if (bricks != null) {
+            bricks.extract(plane, index, out);
+        } else {
+            PlaneExtractor.extract(volume, plane, index, out);
+        }
+    }
+
+    // Reformats from a pyramid level; index is the full-resolution plane index
+    public void extract(Plane plane, int index, int level, short[] out) {
+        if (level == 0) {
+            extract(plane, index, out);
+        } else {
+            PlaneExtractor.extract(pyramid.getLevel(level), plane, VolumePyramid.levelIndex(index, level), out);
+        }
+    }
+
+    // out must hold plane.getWidth() * plane.getHeight() values
+    public void sample(ObliquePlane plane, short[] out) {
+        oblique.sample(plane, out);
+    }
+
+    // scratch must hold at least planeSize(plane) voxels
+    public RenderCache.Frame render(Plane plane, int index, WindowLut lut, short[] scratch) {
+        return render(plane, index, lut, scratch, null);
+    }
+
+    // Renders into reuse when it has the plane's size, otherwise into a new frame
+    public RenderCache.Frame render(Plane plane, int index, WindowLut lut, short[] scratch, RenderCache.Frame reuse) {
+        int width = plane.width(volume), height = plane.height(volume);
+        RenderCache.Frame frame = reuse != null && reuse.width == width && reuse.height == height
+                ? reuse : new RenderCache.Frame(width, height);
+        extract(plane, index, scratch);
+        lut.apply(scratch, frame.pixels, frame.pixels.length);
+        return frame;
+    }
+}
@@ -0,0 +1,167 @@
+package com.dicom.viewer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Windowed plane images keyed by plane, slice index and window, evicted least recently used
+ * once the frames exceed a byte budget. Shared by the three views so scrubbing back over the
+ * same slices costs a lookup and a copy instead of a reformat. A few evicted frames are kept
+ * for reuse, so rendering new slices into a full cache does not allocate a frame per miss; a
+ * frame held for a view is never among them, since its pixels may not have been copied out yet.
+ * Thread-safe.
+ */
+public class RenderCache {
+
+    // Evicted frames kept for reuse, on top of the byte budget
+    private static final int RECYCLED_FRAMES = 8;
+
+    // A rendered plane as opaque ARGB, ready to copy into a PlaneImage
+    public static class Frame {
+        public final int width, height;
+        public final int[] pixels;
+        // Rendered ahead of time by the prefetcher and not shown yet
+        public volatile boolean prefetched;
+        // Hand-offs to a view not copied out yet; guarded by the cache
+        int holds;
+
+        public Frame(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.pixels = new int[width * height];
+        }
+
+        public long sizeInBytes() {
+            return (long) pixels.length * Integer.BYTES;
+        }
+    }
+
+    private static final class Key {
+        final Plane plane;
+        final int index;
+        final double center, width;
+
+        Key(Plane plane, int index, double center, double width) {
+            this.plane = plane;
+            this.index = index;
+            this.center = center;
+            this.width = width;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return plane == k.plane && index == k.index && center == k.center && width == k.width;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = plane.hashCode() * 31 + index;
+            h = h * 31 + Double.hashCode(center);
+            return h * 31 + Double.hashCode(width);
+        }
+    }
+
+    private final long maxBytes;
+    // Access order, so iteration starts at the least recently used frame
+    private final LinkedHashMap<Key, Frame> frames = new LinkedHashMap<>(64, 0.75f, true);
+    // Evicted frames that no view held at the time
+    private final ArrayDeque<Frame> recycled = new ArrayDeque<>(RECYCLED_FRAMES);
+    private long bytes;
+    private long hits, misses, evictions;
+
+    public RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Budget from -Ddicom.viewer.renderCacheBytes, 256 MB by default (about 250 frames of 512x512)
+    public static RenderCache createDefault() {
+        return new RenderCache(Long.getLong("dicom.viewer.renderCacheBytes", 256L << 20));
+    }
+
+    /**
+     * The lut's window is part of the key; its rescale is fixed per volume, which clear() covers.
+     * A frame returned is held for the caller, who must release() it once its pixels are copied.
+     */
+    public synchronized Frame get(Plane plane, int index, WindowLut lut) {
+        Frame frame = frames.get(new Key(plane, index, lut.getCenter(), lut.getWidth()));
+        if (frame != null) {
+            frame.holds++;
+            hits++;
+        } else {
+            misses++;
+        }
+        return frame;
+    }
+
+    // Lookup that does not count towards the hit rate
+    public synchronized boolean contains(Plane plane, int index, WindowLut lut) {
+        return frames.containsKey(new Key(plane, index, lut.getCenter(), lut.getWidth()));
+    }
+
+    public synchronized void put(Plane plane, int index, WindowLut lut, Frame frame) {
+        if (frame.sizeInBytes() > maxBytes) return;
+
+        Frame previous = frames.put(new Key(plane, index, lut.getCenter(), lut.getWidth()), frame);
+        if (previous != null) bytes -= previous.sizeInBytes();
+        bytes += frame.sizeInBytes();
+
+        Iterator<Frame> lru = frames.values().iterator();
+        while (bytes > maxBytes && lru.hasNext()) {
+            Frame evicted = lru.next();
+            lru.remove();
+            bytes -= evicted.sizeInBytes();
+            evictions++;
+            if (evicted.holds == 0 && recycled.size() < RECYCLED_FRAMES) recycled.push(evicted);
+        }
+    }
+
+    // Keeps a frame out of reuse while it waits to be copied into a view; pair with release()
+    public synchronized void hold(Frame frame) {
+        frame.holds++;
+    }
+
+    // The view has copied the frame's pixels; a frame evicted while held is left to the collector
+    public synchronized void release(Frame frame) {
+        if (frame.holds > 0) frame.holds--;
+    }
+
+    // An evicted frame of this size to render into instead of allocating one, or null
+    public synchronized Frame reuse(int width, int height) {
+        Iterator<Frame> it = recycled.iterator();
+        while (it.hasNext()) {
+            Frame frame = it.next();
+            if (frame.width == width && frame.height == height) {
+                it.remove();
+                frame.prefetched = false;
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    // Called when a new volume is loaded; counters are kept so they cover the whole session
+    public synchronized void clear() {
+        frames.clear();
+        recycled.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long sizeInBytes() { return bytes; }
+
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Render cache: %d frames, %.1f MB, %d hits, %d misses (%.0f%% hit), %d evictions",
+                frames.size(), bytes / 1e6, hits, misses, hitRate() * 100, evictions);
+    }
+}
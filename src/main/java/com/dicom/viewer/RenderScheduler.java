@@ -0,0 +1,109 @@
+package com.dicom.viewer;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.EnumSet;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces render requests into at most one render per JavaFX pulse. Input handlers only
+ * update the requested state and mark views dirty; on the next pulse each dirty view is
+ * rendered once with the newest state and the overlays are redrawn once, however many events
+ * arrived in between. Input counts as an interaction until SETTLE_NANOS pass without any, then
+ * the settled callback runs once so views drawn coarsely meanwhile can be refined. The timer runs
+ * only while there is something to draw or an interaction to settle. FX thread only.
+ */
+public class RenderScheduler {
+    private static final long SETTLE_NANOS = 150_000_000L;
+
+    private final Consumer<Plane> renderPlane;
+    private final Runnable renderOverlays;
+    private final Runnable settled;
+    private final EnumSet<Plane> dirtyPlanes = EnumSet.noneOf(Plane.class);
+    private boolean overlaysDirty;
+    private boolean running;
+    private boolean interacting;
+    private long lastEventNanos;
+
+    private long events, frames, planeRenders;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            pulse(now);
+        }
+    };
+
+    public RenderScheduler(Consumer<Plane> renderPlane, Runnable renderOverlays, Runnable settled) {
+        this.renderPlane = renderPlane;
+        this.renderOverlays = renderOverlays;
+        this.settled = settled;
+    }
+
+    // One user input (slider change, crosshair drag step, click); starts or extends an interaction
+    public void recordEvent() {
+        events++;
+        lastEventNanos = System.nanoTime();
+        interacting = true;
+        schedule();
+    }
+
+    // True from an input event until the input has been quiet for SETTLE_NANOS
+    public boolean isInteracting() {
+        return interacting;
+    }
+
+    public void requestPlane(Plane plane) {
+        dirtyPlanes.add(plane);
+        schedule();
+    }
+
+    // Crosshairs and the toolbar labels
+    public void requestOverlays() {
+        overlaysDirty = true;
+        schedule();
+    }
+
+    private void schedule() {
+        if (!running) {
+            running = true;
+            timer.start();
+        }
+    }
+
+    private void pulse(long now) {
+        if (interacting && now - lastEventNanos >= SETTLE_NANOS) {
+            // Runs before the dirty planes, so anything it requests is drawn on this pulse
+            interacting = false;
+            settled.run();
+        }
+        if (dirtyPlanes.isEmpty() && !overlaysDirty) {
+            // A quiet pulse: stop asking for pulses until the next request, or until the input settles
+            if (!interacting) {
+                timer.stop();
+                running = false;
+            }
+            return;
+        }
+        frames++;
+        for (Plane plane : Plane.values()) {
+            if (dirtyPlanes.remove(plane)) {
+                renderPlane.accept(plane);
+                planeRenders++;
+            }
+        }
+        // Slice labels and crosshair positions follow any plane change
+        overlaysDirty = false;
+        renderOverlays.run();
+    }
+
+    public long getEvents() { return events; }
+    public long getFrames() { return frames; }
+    public long getPlaneRenders() { return planeRenders; }
+
+    @Override
+    public String toString() {
+        return String.format("Render scheduler: %d input events, %d frames, %d plane renders (%.1f events per frame)",
+                events, frames, planeRenders, frames == 0 ? 0.0 : (double) events / frames);
+    }
+}
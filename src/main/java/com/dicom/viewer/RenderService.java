@@ -0,0 +1,272 @@
+package com.dicom.viewer;
+
+import javafx.application.Platform;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reformats and windows planes on worker threads so the FX thread only copies finished frames.
+ * Each plane has its own lane: the three planes render concurrently, while within a lane only
+ * the newest request is kept and older ones are superseded before they start. Finished frames
+ * are handed back through Platform.runLater, at most one pending hand-off per plane.
+ */
+public class RenderService {
+
+    // Receives finished frames on the FX application thread, with the System.nanoTime() of their request
+    public interface FrameSink {
+        void show(Plane plane, int index, RenderCache.Frame frame, long requestNanos);
+    }
+
+    private static final class Request {
+        final PlaneRenderer renderer;
+        final int index;
+        final WindowLut lut;
+        final boolean cacheable;
+        // Set for oblique views, which are resampled instead of reformatted at index
+        final ObliquePlane oblique;
+        // Set for slab views, which project thickness slices around index
+        final SlabProjector.Mode slabMode;
+        final int slabThickness;
+        // Pyramid level to reformat from; only level 0 is cached
+        final int level;
+        final long requestNanos = System.nanoTime();
+
+        Request(PlaneRenderer renderer, int index, WindowLut lut, boolean cacheable, ObliquePlane oblique,
+                SlabProjector.Mode slabMode, int slabThickness, int level) {
+            this.renderer = renderer;
+            this.index = index;
+            this.lut = lut;
+            this.cacheable = cacheable;
+            this.oblique = oblique;
+            this.slabMode = slabMode;
+            this.slabThickness = slabThickness;
+            this.level = level;
+        }
+    }
+
+    private static final class Result {
+        final PlaneRenderer renderer;
+        final int index;
+        final RenderCache.Frame frame;
+        final boolean cached;
+        final long requestNanos;
+
+        Result(PlaneRenderer renderer, int index, RenderCache.Frame frame, boolean cached, long requestNanos) {
+            this.renderer = renderer;
+            this.index = index;
+            this.frame = frame;
+            this.cached = cached;
+            this.requestNanos = requestNanos;
+        }
+    }
+
+    private final class Lane {
+        final Plane plane;
+        // Guarded by the lane
+        Request pending;
+        boolean busy;
+        // Only touched by the worker currently draining the lane
+        short[] raw = new short[0];
+        int rawIndex = -1, rawLevel;
+        PlaneRenderer rawSource;
+        int rawModCount;
+        // Keeps the last slab so the next one only reads the slices that changed
+        SlabProjector slab;
+        // Hand-off to the FX thread, and a frame it gave back for reuse
+        final AtomicReference<Result> ready = new AtomicReference<>();
+        final AtomicBoolean handOffScheduled = new AtomicBoolean();
+        final AtomicReference<RenderCache.Frame> spare = new AtomicReference<>();
+
+        Lane(Plane plane) {
+            this.plane = plane;
+        }
+
+        void drain() {
+            while (true) {
+                Request request;
+                synchronized (this) {
+                    request = pending;
+                    pending = null;
+                    if (request == null) {
+                        busy = false;
+                        return;
+                    }
+                }
+                try {
+                    render(this, request);
+                } catch (RuntimeException e) {
+                    System.err.println("Failed to render " + plane + " slice " + request.index + " - " + e);
+                }
+            }
+        }
+    }
+
+    private final RenderCache cache;
+    private final FrameSink sink;
+    private final ExecutorService workers;
+    private final Map<Plane, Lane> lanes = new EnumMap<>(Plane.class);
+    private volatile PlaneRenderer renderer;
+
+    public RenderService(RenderCache cache, FrameSink sink, int threads) {
+        this.cache = cache;
+        this.sink = sink;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "plane-render");
+            t.setDaemon(true);
+            return t;
+        });
+        for (Plane plane : Plane.values()) {
+            lanes.put(plane, new Lane(plane));
+        }
+    }
+
+    // New volume: requests and frames for the previous one are dropped
+    public void setRenderer(PlaneRenderer renderer) {
+        this.renderer = renderer;
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                lane.pending = null;
+                // An idle lane lets go of the previous volume; a busy one replaces it on its next slab
+                if (!lane.busy) lane.slab = null;
+            }
+            release(lane.ready.getAndSet(null));
+            lane.spare.set(null);
+        }
+    }
+
+    /**
+     * Asks for a slice to be rendered; replaces any request for the same plane that has not
+     * started yet. Uncacheable requests (re-windowing during a drag) skip the render cache.
+     */
+    public void request(Plane plane, int index, WindowLut lut, boolean cacheable) {
+        PlaneRenderer current = renderer;
+        if (current == null) return;
+        submit(lanes.get(plane), new Request(current, index, lut, cacheable, null, null, 0, 0));
+    }
+
+    // Reformats slice index from a downsampled pyramid level, for quick frames while the user drags; never cached
+    public void requestLevel(Plane plane, int index, int level, WindowLut lut) {
+        PlaneRenderer current = renderer;
+        if (current == null) return;
+        submit(lanes.get(plane), new Request(current, index, lut, false, null, null, 0, level));
+    }
+
+    // Resamples an oblique plane in the lane of the view showing it; never cached
+    public void requestOblique(Plane view, ObliquePlane plane, WindowLut lut) {
+        PlaneRenderer current = renderer;
+        if (current == null) return;
+        submit(lanes.get(view), new Request(current, -1, lut, false, plane, null, 0, 0));
+    }
+
+    // Thick-slab projection of thickness slices centred on index; never cached
+    public void requestSlab(Plane plane, int index, int thickness, SlabProjector.Mode mode, WindowLut lut) {
+        PlaneRenderer current = renderer;
+        if (current == null) return;
+        submit(lanes.get(plane), new Request(current, index, lut, false, null, mode, thickness, 0));
+    }
+
+    private void submit(Lane lane, Request request) {
+        synchronized (lane) {
+            lane.pending = request;
+            if (!lane.busy) {
+                lane.busy = true;
+                workers.execute(lane::drain);
+            }
+        }
+    }
+
+    private void render(Lane lane, Request request) {
+        PlaneRenderer source = request.renderer;
+        if (source != renderer) return;
+        PerfEvents.PlaneReformat event = new PerfEvents.PlaneReformat();
+        event.begin();
+
+        ObliquePlane oblique = request.oblique;
+        Volume volume = source.getVolume();
+        Volume level = source.getLevel(request.level);
+        int width = oblique != null ? oblique.getWidth() : lane.plane.width(level);
+        int height = oblique != null ? oblique.getHeight() : lane.plane.height(level);
+        int size = width * height;
+        if (lane.raw.length != size) {
+            lane.raw = new short[size];
+            lane.rawIndex = -1;
+        }
+        if (oblique != null) {
+            source.sample(oblique, lane.raw);
+            lane.rawIndex = -1;
+        } else if (request.slabMode != null) {
+            if (lane.slab == null || lane.slab.getVolume() != volume) {
+                lane.slab = new SlabProjector(volume, lane.plane, request.lut.isSigned());
+            }
+            lane.slab.project(request.index, request.slabThickness, request.slabMode, lane.raw);
+            lane.rawIndex = -1;
+        } else if (lane.rawIndex != request.index || lane.rawLevel != request.level || lane.rawSource != source
+                || lane.rawModCount != volume.getModCount()) {
+            // Re-windowing the same slice skips the reformat, unless the volume is still filling in
+            lane.rawModCount = volume.getModCount();
+            source.extract(lane.plane, request.index, request.level, lane.raw);
+            lane.rawIndex = request.index;
+            lane.rawLevel = request.level;
+            lane.rawSource = source;
+        }
+
+        // Cached frames are kept by the cache, so a cacheable miss renders into one it evicted
+        RenderCache.Frame frame = request.cacheable ? cache.reuse(width, height) : lane.spare.getAndSet(null);
+        if (frame == null || frame.width != width || frame.height != height) {
+            frame = new RenderCache.Frame(width, height);
+        }
+        request.lut.apply(lane.raw, frame.pixels, size);
+        if (event.shouldCommit()) {
+            event.plane = lane.plane.name();
+            event.kind = oblique != null ? "oblique" : request.slabMode != null ? "slab"
+                    : request.level > 0 ? "level" : "slice";
+            event.index = request.index;
+            event.level = request.level;
+            event.pixels = size;
+            event.commit();
+        }
+
+        if (request.cacheable) {
+            // Under the cache lock, so a frame of the previous volume never lands after clear(),
+            // and held before any other put can evict it and hand it out for reuse
+            synchronized (cache) {
+                if (source != renderer) return;
+                cache.hold(frame);
+                cache.put(lane.plane, request.index, request.lut, frame);
+            }
+        }
+        publish(lane, new Result(source, request.index, frame, request.cacheable, request.requestNanos));
+    }
+
+    // Newest result wins; a hand-off already scheduled picks it up
+    private void publish(Lane lane, Result result) {
+        Result replaced = lane.ready.getAndSet(result);
+        if (replaced != null && !replaced.cached) lane.spare.set(replaced.frame);
+        release(replaced);
+        if (lane.handOffScheduled.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                lane.handOffScheduled.set(false);
+                Result ready = lane.ready.getAndSet(null);
+                if (ready == null) return;
+                if (ready.renderer != renderer) {
+                    release(ready);
+                    return;
+                }
+                sink.show(lane.plane, ready.index, ready.frame, ready.requestNanos);
+                // The sink has copied the pixels out, so the frame can be reused
+                if (!ready.cached) lane.spare.set(ready.frame);
+                release(ready);
+            });
+        }
+    }
+
+    // A cached frame that is no longer waiting for its view may be recycled by the cache
+    private void release(Result result) {
+        if (result != null && result.cached) cache.release(result.frame);
+    }
+}
@@ -0,0 +1,16 @@
+package com.dicom.viewer;
+
+import java.util.List;
+
+// A loaded series: per-slice geometry in spatial order plus the voxel volume and its intensity statistics
+public class Series {
+    public final List<DicomSlice> slices;
+    public final Volume volume;
+    public final VolumeStats stats;
+
+    public Series(List<DicomSlice> slices, Volume volume, VolumeStats stats) {
+        this.slices = slices;
+        this.volume = volume;
+        this.stats = stats;
+    }
+}
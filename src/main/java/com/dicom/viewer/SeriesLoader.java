@@ -0,0 +1,517 @@
+package com.dicom.viewer;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.io.DicomInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads a series in two passes. A header scan stops at PixelData so the series can be validated,
+ * sorted and the volume allocated before any pixels are read. The pixel pass then overlaps two
+ * stages: the calling thread reads file bytes ahead of a bounded pool of decoders, which write
+ * each slice straight into its place in the volume.
+ *
+ * Loads can stream: a Listener gets the allocated volume before any pixels are read and then
+ * each slice as it lands, centre slice first and working outwards, so a viewer can show the
+ * series while it fills in. cancel() stops the load in progress.
+ *
+ * Multi-frame objects (Enhanced CT/MR, NM, US) are expanded into one slice per frame, placed by
+ * the per-frame functional groups, and their frames decode in parallel like separate files.
+ */
+public class SeriesLoader {
+
+    // Progress of a streaming load; called on the loading and decode threads
+    public interface Listener {
+        // Headers are scanned and the volume allocated, still empty; stats fills in with the slices
+        void volumeAllocated(Series series, VolumeStats.Builder stats);
+
+        // Slice z of the volume has been decoded, the count-th of total
+        void sliceDecoded(int z, int count, int total);
+    }
+
+    // Files read but not yet decoded; bounds the memory held by the read-ahead stage
+    private static final int READ_AHEAD = 32;
+
+    private final int decodeThreads;
+    private VolumeCache cache;
+    private Stats lastStats = new Stats();
+    // Cancellation flag of the load in progress; each load has its own
+    private volatile AtomicBoolean cancelled = new AtomicBoolean();
+
+    public SeriesLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SeriesLoader(int decodeThreads) {
+        this.decodeThreads = Math.max(1, decodeThreads);
+    }
+
+    public Stats getLastStats() {
+        return lastStats;
+    }
+
+    // Optional cache of decoded volumes; a hit skips reading and decoding entirely
+    public void setCache(VolumeCache cache) {
+        this.cache = cache;
+    }
+
+    public Series load(File[] files) throws IOException {
+        return load(files, null);
+    }
+
+    // Stops the load in progress, which then throws CancellationException
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * Loads a series, reporting progress to listener if it is not null. A cache hit returns
+     * without calling the listener. Throws CancellationException if cancel() was called.
+     */
+    public Series load(File[] files, Listener listener) throws IOException {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        this.cancelled = cancelled;
+        Stats stats = new Stats();
+        stats.files = files.length;
+        long start = System.nanoTime();
+
+        if (cache != null) {
+            PerfEvents.LoadStage cacheEvent = new PerfEvents.LoadStage("cache");
+            cacheEvent.begin();
+            Series cached = cache.get(files);
+            // A miss is committed with no slices, so its lookup time still shows
+            cacheEvent.slices = cached != null ? cached.slices.size() : 0;
+            cacheEvent.commit();
+            if (cached != null) {
+                stats.cacheHit = true;
+                stats.slices = cached.slices.size();
+                stats.totalNanos = System.nanoTime() - start;
+                lastStats = stats;
+                return cached;
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(decodeThreads, r -> {
+            Thread t = new Thread(r, "dicom-decode");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            // Scan stage: headers only, so the series can be checked, sorted and sized before any pixels are read
+            long scanStart = System.nanoTime();
+            PerfEvents.LoadStage scanEvent = new PerfEvents.LoadStage("scan");
+            scanEvent.begin();
+            List<DicomSlice> slices = scanHeaders(files, pool, cancelled, stats);
+            slices = keepConsistentSlices(slices, stats);
+            // Spatial order up front, along the slice normal; the sort is stable so file order breaks ties
+            VolumeGeometry.sortSlices(slices);
+            stats.scanNanos = System.nanoTime() - scanStart;
+            scanEvent.slices = slices.size();
+            scanEvent.commit();
+            if (cancelled.get()) throw new CancellationException("Series loading cancelled");
+
+            Volume volume = null;
+            VolumeStats volumeStats = null;
+            if (!slices.isEmpty()) {
+                DicomSlice first = slices.get(0);
+                if (!Volume.fits(first.columns, first.rows, slices.size())) {
+                    throw new IOException(String.format("Series of %d slices of %dx%d is too large to load",
+                            slices.size(), first.columns, first.rows));
+                }
+                volume = new Volume(first.columns, first.rows, slices.size());
+                VolumeStats.Builder statsBuilder = new VolumeStats.Builder(first.columns, first.rows, slices.size(),
+                        first.pixelRepresentation == 1, decodeThreads);
+                if (listener != null) {
+                    listener.volumeAllocated(new Series(new ArrayList<>(slices), volume, null), statsBuilder);
+                }
+                PerfEvents.LoadStage decodeEvent = new PerfEvents.LoadStage("decode");
+                decodeEvent.begin();
+                boolean[] failed = decodePixels(slices, volume, statsBuilder, listener, cancelled, start, pool, stats);
+                volume = removeFailedSlices(slices, volume, failed);
+                decodeEvent.slices = slices.size();
+                decodeEvent.commit();
+
+                PerfEvents.LoadStage statsEvent = new PerfEvents.LoadStage("stats");
+                statsEvent.begin();
+                volumeStats = volume == null ? null : statsBuilder.build(failed);
+                statsEvent.slices = slices.size();
+                statsEvent.commit();
+            }
+
+            stats.slices = slices.size();
+            stats.decodeThreads = decodeThreads;
+            stats.totalNanos = System.nanoTime() - start;
+            lastStats = stats;
+
+            Series series = new Series(slices, volume, volumeStats);
+            if (cache != null && volume != null) {
+                cache.put(files, series);
+            }
+            return series;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Series loading interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<DicomSlice> scanHeaders(File[] files, ExecutorService pool, AtomicBoolean cancelled, Stats stats)
+            throws InterruptedException {
+        List<Future<List<DicomSlice>>> scans = new ArrayList<>(files.length);
+        for (File file : files) {
+            scans.add(pool.submit(() -> scanHeader(file)));
+        }
+
+        List<DicomSlice> slices = new ArrayList<>(files.length);
+        for (int i = 0; i < files.length; i++) {
+            if (cancelled.get()) throw new CancellationException("Series loading cancelled");
+            try {
+                slices.addAll(scans.get(i).get());
+            } catch (ExecutionException e) {
+                stats.failures++;
+                System.err.println("Failed to load DICOM file: " + files[i].getName() + " - " + e.getCause().getMessage());
+            }
+        }
+        return slices;
+    }
+
+    // Reads the header up to the PixelData tag; pixel bytes are left for the decode stage. One slice per frame.
+    static List<DicomSlice> scanHeader(File file) throws IOException {
+        DicomSlice slice = new DicomSlice();
+        slice.file = file;
+        Attributes attributes;
+
+        try (DicomInputStream dis = new DicomInputStream(file)) {
+            attributes = dis.readDataset(-1, Tag.PixelData);
+            slice.transferSyntaxUID = dis.getTransferSyntax();
+
+            // Extract basic information
+            slice.rows = attributes.getInt(Tag.Rows, 0);
+            slice.columns = attributes.getInt(Tag.Columns, 0);
+            slice.instanceUID = attributes.getString(Tag.SOPInstanceUID, "");
+
+            // Extract spatial information
+            double[] imagePosition = attributes.getDoubles(Tag.ImagePositionPatient);
+            if (imagePosition != null && imagePosition.length >= 3) {
+                slice.imagePosition = imagePosition;
+            }
+
+            double[] imageOrientation = attributes.getDoubles(Tag.ImageOrientationPatient);
+            if (imageOrientation != null && imageOrientation.length >= 6) {
+                slice.imageOrientation = imageOrientation;
+            }
+
+            double[] pixelSpacing = attributes.getDoubles(Tag.PixelSpacing);
+            if (pixelSpacing != null && pixelSpacing.length >= 2) {
+                slice.pixelSpacing = pixelSpacing;
+            }
+
+            slice.sliceThickness = attributes.getDouble(Tag.SliceThickness, 1.0);
+
+            // Extract window/level information
+            slice.windowCenter = attributes.getDouble(Tag.WindowCenter, Double.NaN);
+            slice.windowWidth = attributes.getDouble(Tag.WindowWidth, Double.NaN);
+            slice.rescaleSlope = attributes.getDouble(Tag.RescaleSlope, 1.0);
+            slice.rescaleIntercept = attributes.getDouble(Tag.RescaleIntercept, 0.0);
+
+            // Pixel layout, needed to copy native pixel data without a decoder
+            slice.samplesPerPixel = attributes.getInt(Tag.SamplesPerPixel, 1);
+            slice.planarConfiguration = attributes.getInt(Tag.PlanarConfiguration, 0);
+            slice.bitsAllocated = attributes.getInt(Tag.BitsAllocated, 16);
+            slice.bitsStored = attributes.getInt(Tag.BitsStored, slice.bitsAllocated);
+            slice.pixelRepresentation = attributes.getInt(Tag.PixelRepresentation, 0);
+
+            if (dis.tag() != Tag.PixelData) {
+                throw new IOException("No pixel data");
+            }
+            // The scan stopped right after the PixelData element header, so this is where its value starts
+            slice.pixelDataOffset = dis.getPosition();
+            slice.pixelDataLength = dis.length();
+        }
+
+        int frames = attributes.getInt(Tag.NumberOfFrames, 1);
+        if (frames <= 1) {
+            List<DicomSlice> slices = new ArrayList<>(1);
+            slices.add(slice);
+            return slices;
+        }
+        return expandFrames(slice, attributes, frames);
+    }
+
+    /**
+     * One slice per frame of a multi-frame object. Enhanced objects place and rescale each frame
+     * through the shared and per-frame functional groups; older NM and US objects only position
+     * the first frame (NM in its detector information), so the others are stepped along the
+     * slice normal. Native frames lie back to back in PixelData, each at its own offset.
+     */
+    static List<DicomSlice> expandFrames(DicomSlice first, Attributes attributes, int frames) {
+        Attributes shared = attributes.getNestedDataset(Tag.SharedFunctionalGroupsSequence);
+        Sequence perFrame = attributes.getSequence(Tag.PerFrameFunctionalGroupsSequence);
+        boolean enhanced = shared != null || perFrame != null;
+
+        Attributes detector = attributes.getNestedDataset(Tag.DetectorInformationSequence);
+        if (detector != null && !attributes.containsValue(Tag.ImagePositionPatient)) {
+            applyPlane(detector, first);
+        }
+        double[] o = first.imageOrientation;
+        double[] normal = {o[1] * o[5] - o[2] * o[4], o[2] * o[3] - o[0] * o[5], o[0] * o[4] - o[1] * o[3]};
+        if (Math.abs(normal[0]) + Math.abs(normal[1]) + Math.abs(normal[2]) < 1e-6) {
+            // No orientation (US cine): stack the frames along z
+            normal = new double[] {0, 0, 1};
+        }
+        double spacing = attributes.getDouble(Tag.SpacingBetweenSlices, first.sliceThickness);
+
+        int frameLength = PixelDecoder.rawLength(first);
+        List<DicomSlice> slices = new ArrayList<>(frames);
+        for (int i = 0; i < frames; i++) {
+            DicomSlice slice = first.copy();
+            slice.frame = i;
+            slice.frames = frames;
+            if (enhanced) {
+                if (shared != null) applyFunctionalGroups(shared, slice);
+                if (perFrame != null && i < perFrame.size()) applyFunctionalGroups(perFrame.get(i), slice);
+            } else {
+                double[] position = new double[3];
+                for (int a = 0; a < 3; a++) position[a] = first.imagePosition[a] + i * spacing * normal[a];
+                slice.imagePosition = position;
+            }
+            if (first.pixelDataLength >= 0) {
+                // A short PixelData leaves the missing frames too short to be raw, so they fail to decode
+                slice.pixelDataOffset = first.pixelDataOffset + (long) i * frameLength;
+                slice.pixelDataLength = (int) Math.max(0, Math.min(frameLength, first.pixelDataLength - (long) i * frameLength));
+            }
+            slices.add(slice);
+        }
+        return slices;
+    }
+
+    // Position, orientation, spacing, rescale and window of one frame from a functional groups item
+    private static void applyFunctionalGroups(Attributes groups, DicomSlice slice) {
+        Attributes position = groups.getNestedDataset(Tag.PlanePositionSequence);
+        if (position != null) applyPlane(position, slice);
+        Attributes orientation = groups.getNestedDataset(Tag.PlaneOrientationSequence);
+        if (orientation != null) applyPlane(orientation, slice);
+
+        Attributes measures = groups.getNestedDataset(Tag.PixelMeasuresSequence);
+        if (measures != null) {
+            double[] pixelSpacing = measures.getDoubles(Tag.PixelSpacing);
+            if (pixelSpacing != null && pixelSpacing.length >= 2) slice.pixelSpacing = pixelSpacing;
+            slice.sliceThickness = measures.getDouble(Tag.SliceThickness, slice.sliceThickness);
+        }
+        Attributes transformation = groups.getNestedDataset(Tag.PixelValueTransformationSequence);
+        if (transformation != null) {
+            slice.rescaleSlope = transformation.getDouble(Tag.RescaleSlope, slice.rescaleSlope);
+            slice.rescaleIntercept = transformation.getDouble(Tag.RescaleIntercept, slice.rescaleIntercept);
+        }
+        Attributes voi = groups.getNestedDataset(Tag.FrameVOILUTSequence);
+        if (voi != null) {
+            slice.windowCenter = voi.getDouble(Tag.WindowCenter, slice.windowCenter);
+            slice.windowWidth = voi.getDouble(Tag.WindowWidth, slice.windowWidth);
+        }
+    }
+
+    // ImagePositionPatient and ImageOrientationPatient, where an item has them
+    private static void applyPlane(Attributes item, DicomSlice slice) {
+        double[] imagePosition = item.getDoubles(Tag.ImagePositionPatient);
+        if (imagePosition != null && imagePosition.length >= 3) slice.imagePosition = imagePosition;
+        double[] imageOrientation = item.getDoubles(Tag.ImageOrientationPatient);
+        if (imageOrientation != null && imageOrientation.length >= 6) slice.imageOrientation = imageOrientation;
+    }
+
+    // Keeps the slices sharing the most common matrix size; strays (scouts, reports) would not fit the volume
+    private static List<DicomSlice> keepConsistentSlices(List<DicomSlice> slices, Stats stats) {
+        Map<Long, Integer> sizeCounts = new HashMap<>();
+        long commonSize = 0;
+        int commonCount = 0;
+        for (DicomSlice slice : slices) {
+            if (slice.rows <= 0 || slice.columns <= 0) continue;
+            long size = ((long) slice.rows << 32) | slice.columns;
+            int count = sizeCounts.merge(size, 1, Integer::sum);
+            if (count > commonCount) {
+                commonCount = count;
+                commonSize = size;
+            }
+        }
+
+        List<DicomSlice> kept = new ArrayList<>(slices.size());
+        for (DicomSlice slice : slices) {
+            if ((((long) slice.rows << 32) | slice.columns) == commonSize) {
+                kept.add(slice);
+            } else {
+                stats.failures++;
+                System.err.println(String.format("Skipping DICOM file: %s - %dx%d does not match series size %dx%d",
+                        slice.file.getName(), slice.columns, slice.rows, (int) commonSize, (int) (commonSize >>> 32)));
+            }
+        }
+        return kept;
+    }
+
+    // Pixel stage: the calling thread reads files ahead of the pool, which decodes each one into its z slot
+    // and gathers its statistics while the slice is still in cache. Slices go centre first, then outwards.
+    private boolean[] decodePixels(List<DicomSlice> slices, Volume volume, VolumeStats.Builder statsBuilder,
+                                   Listener listener, AtomicBoolean cancelled, long start,
+                                   ExecutorService pool, Stats stats) throws InterruptedException {
+        int total = slices.size();
+        boolean[] failed = new boolean[total];
+        Semaphore readAhead = new Semaphore(READ_AHEAD);
+        AtomicLong decodeNanos = new AtomicLong();
+        AtomicLong statsNanos = new AtomicLong();
+        AtomicLong firstSliceNanos = new AtomicLong();
+        AtomicLong decoded = new AtomicLong();
+        List<Future<?>> decodes = new ArrayList<>(total);
+
+        // Compressed frames of multi-frame files have nothing to read ahead; pooled readers decode them in place
+        try (FrameReaderPool readers = new FrameReaderPool()) {
+            for (DicomSlice slice : slices) {
+                if (slice.frames > 1 && !PixelDecoder.isRaw(slice)) readers.expect(slice.file, 1);
+            }
+
+            for (int i = 0; i < total; i++) {
+                readAhead.acquire();
+                if (cancelled.get()) {
+                    readAhead.release();
+                    break;
+                }
+                int z = centreOutIndex(i, total);
+                DicomSlice slice = slices.get(z);
+                long readStart = System.nanoTime();
+                ByteBuffer data;
+                try {
+                    data = PixelDecoder.readSource(slice);
+                } catch (IOException e) {
+                    readAhead.release();
+                    failed[z] = true;
+                    System.err.println("Failed to read DICOM file: " + slice.file.getName() + " - " + e.getMessage());
+                    continue;
+                }
+                stats.readNanos += System.nanoTime() - readStart;
+                if (data != null) stats.bytesRead += data.remaining();
+                if (PixelDecoder.isRaw(slice)) stats.rawSlices++;
+                if (slice.frames > 1) stats.frames++;
+
+                int slot = z;
+                decodes.add(pool.submit(() -> {
+                    long decodeStart = System.nanoTime();
+                    try {
+                        PixelDecoder.decode(slice, data, volume, slot, readers);
+                        long statsStart = System.nanoTime();
+                        statsBuilder.addSlice(volume, slot);
+                        statsNanos.addAndGet(System.nanoTime() - statsStart);
+                        volume.markModified();
+                        firstSliceNanos.compareAndSet(0, System.nanoTime() - start);
+                        if (listener != null) {
+                            listener.sliceDecoded(slot, (int) decoded.incrementAndGet(), total);
+                        }
+                    } catch (Exception e) {
+                        failed[slot] = true;
+                        System.err.println("Failed to load DICOM file: " + slice.file.getName() + " - " + e.getMessage());
+                    } finally {
+                        decodeNanos.addAndGet(System.nanoTime() - decodeStart);
+                        readAhead.release();
+                    }
+                }));
+            }
+
+            for (Future<?> decode : decodes) {
+                try {
+                    decode.get();
+                } catch (ExecutionException e) {
+                    // Already recorded by the task itself
+                }
+            }
+        }
+        for (boolean f : failed) {
+            if (f) stats.failures++;
+        }
+        stats.decodeNanos = decodeNanos.get();
+        stats.statsNanos = statsNanos.get();
+        stats.firstSliceNanos = firstSliceNanos.get();
+        if (cancelled.get()) throw new CancellationException("Series loading cancelled");
+        return failed;
+    }
+
+    // i-th slice in centre-out order: middle, middle + 1, middle - 1, middle + 2, ...
+    static int centreOutIndex(int i, int count) {
+        int middle = (count - 1) / 2;
+        int offset = (i + 1) / 2;
+        // The upper half is never shorter than the lower, so this stays in range
+        return (i % 2 == 1) ? middle + offset : middle - offset;
+    }
+
+    // Closes the gaps left by slices whose pixels could not be decoded, keeping spatial order
+    private static Volume removeFailedSlices(List<DicomSlice> slices, Volume volume, boolean[] failed) {
+        ShortBuffer voxels = volume.getVoxels();
+        int sliceSize = volume.getSliceStride();
+        List<DicomSlice> kept = new ArrayList<>(slices.size());
+        for (int z = 0; z < failed.length; z++) {
+            if (failed[z]) continue;
+            int target = kept.size();
+            if (target != z) {
+                voxels.put(target * sliceSize, voxels, z * sliceSize, sliceSize);
+            }
+            kept.add(slices.get(z));
+        }
+        if (kept.size() == slices.size()) return volume;
+
+        slices.clear();
+        slices.addAll(kept);
+        return kept.isEmpty() ? null : new Volume(volume.getWidth(), volume.getHeight(), kept.size(), voxels);
+    }
+
+    // Per-stage timings of the last load
+    public static class Stats {
+        public int files, slices, rawSlices, failures, decodeThreads;
+        // Slices that are frames of multi-frame files
+        public int frames;
+        // decodeNanos includes statsNanos, the time spent gathering intensity statistics
+        public long scanNanos, bytesRead, readNanos, decodeNanos, statsNanos, totalNanos;
+        // From the start of the load until the first slice was decoded
+        public long firstSliceNanos;
+        public boolean cacheHit;
+
+        public double readMBps() {
+            return readNanos == 0 ? 0 : (bytesRead / 1e6) / (readNanos / 1e9);
+        }
+
+        public double decodeSlicesPerSecond() {
+            // decodeNanos is summed over workers, so scale by the pool size for wall-clock rate
+            return decodeNanos == 0 ? 0 : slices / (decodeNanos / 1e9) * decodeThreads;
+        }
+
+        public double slicesPerSecond() {
+            return totalNanos == 0 ? 0 : slices / (totalNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            if (cacheHit) {
+                return String.format("Opened %d slices from the volume cache in %.0f ms", slices, totalNanos / 1e6);
+            }
+            return String.format("Scanned %d headers in %.0f ms, read %.1f MB at %.1f MB/s, "
+                            + "decoded %d slices (%d raw, %d frames) at %.1f slices/s on %d threads (stats %.0f ms), %d failed, "
+                            + "first slice at %.0f ms, total %.0f ms (%.1f slices/s)",
+                    files, scanNanos / 1e6, bytesRead / 1e6, readMBps(), slices, rawSlices, frames, decodeSlicesPerSecond(),
+                    decodeThreads, statsNanos / 1e6, failures, firstSliceNanos / 1e6,
+                    totalNanos / 1e6, slicesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.dicom.viewer;
+
+import java.nio.ShortBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Thick-slab projections of one plane orientation (maximum, minimum or average intensity along
+ * the plane normal), reduced straight from the voxel volume in display orientation. The slab of
+ * the last call is kept, so a slab that overlaps it only reads the slices that entered and left:
+ * averages add and subtract them, while maxima and minima fold in the entering slices and
+ * rescan just the pixels whose extreme has left. Rows are reduced in parallel bands.
+ * Keeps state between calls, so an instance must only be used by one thread at a time.
+ */
+public class SlabProjector {
+
+    public enum Mode {
+        MIP("MIP"),
+        MINIP("MinIP"),
+        AVERAGE("AvgIP");
+
+        public final String label;
+
+        Mode(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // Output rows per parallel task
+    private static final int BAND_ROWS = 16;
+
+    private final Volume volume;
+    private final int mask;
+    private final int width, height, count;
+    // Voxel offsets of one image pixel to the right, one slice through the slab, and each image row
+    private final int pixelStep, sliceStep;
+    private final int[] rowBase;
+
+    // The current slab: sums for AVERAGE, extremes of sign * value otherwise; empty when last < first
+    private final int[] acc;
+    private Mode mode;
+    private int first = 0, last = -1;
+    private int modCount;
+    private long slicesRead;
+
+    public SlabProjector(Volume volume, Plane plane, boolean signed) {
+        this.volume = volume;
+        this.mask = signed ? -1 : 0xFFFF;
+        this.width = plane.width(volume);
+        this.height = plane.height(volume);
+        this.count = plane.count(volume);
+        this.rowBase = new int[height];
+        // Same orientation as PlaneExtractor: coronal and sagittal with the first slice at the bottom
+        int depth = volume.getDepth();
+        switch (plane) {
+            case AXIAL:
+                pixelStep = 1;
+                sliceStep = volume.getSliceStride();
+                for (int y = 0; y < height; y++) rowBase[y] = volume.index(0, y, 0);
+                break;
+            case CORONAL:
+                pixelStep = 1;
+                sliceStep = volume.getRowStride();
+                for (int y = 0; y < height; y++) rowBase[y] = volume.index(0, 0, depth - 1 - y);
+                break;
+            default:
+                pixelStep = volume.getRowStride();
+                sliceStep = 1;
+                for (int y = 0; y < height; y++) rowBase[y] = volume.index(0, 0, depth - 1 - y);
+                break;
+        }
+        this.acc = new int[width * height];
+    }
+
+    public Volume getVolume() {
+        return volume;
+    }
+
+    /**
+     * Projects the slab of thickness slices centred on index, clamped to the volume, into out
+     * (width * height values, stored units).
+     */
+    public void project(int index, int thickness, Mode mode, short[] out) {
+        int from = Math.max(0, index - (thickness - 1) / 2);
+        int to = Math.min(count - 1, index + Math.max(1, thickness) / 2);
+        int size = to - from + 1;
+        int overlap = Math.max(0, Math.min(to, last) - Math.max(from, first) + 1);
+        int changed = (last - first + 1 - overlap) + (size - overlap);
+        // Sliding by less than the slab reuses it; anything else is cheaper to reduce from scratch
+        boolean full = mode != this.mode || overlap == 0 || changed >= size || modCount != volume.getModCount();
+        modCount = volume.getModCount();
+        int oldFirst = first, oldLast = last;
+        int sign = mode == Mode.MINIP ? -1 : 1;
+
+        int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int end = Math.min(height, (band + 1) * BAND_ROWS);
+            for (int y = band * BAND_ROWS; y < end; y++) {
+                if (full) {
+                    reduceRow(y, from, to, mode, sign);
+                } else {
+                    updateRow(y, oldFirst, oldLast, from, to, mode, sign);
+                }
+                writeRow(y, size, mode, sign, out);
+            }
+        });
+
+        slicesRead += full ? size : changed;
+        this.mode = mode;
+        first = from;
+        last = to;
+    }
+
+    private void reduceRow(int y, int from, int to, Mode mode, int sign) {
+        ShortBuffer voxels = volume.getVoxels();
+        int offset = y * width;
+        for (int x = 0, p = rowBase[y]; x < width; x++, p += pixelStep) {
+            acc[offset + x] = mode == Mode.AVERAGE ? sum(voxels, p, from, to) : extreme(voxels, p, from, to, sign);
+        }
+    }
+
+    // Moves each pixel of row y from slab [oldFrom, oldTo] to the overlapping slab [from, to]
+    private void updateRow(int y, int oldFrom, int oldTo, int from, int to, Mode mode, int sign) {
+        ShortBuffer voxels = volume.getVoxels();
+        // Slices that left below and above, and slices that entered below and above
+        int leftLow = Math.min(oldTo, from - 1), leftHigh = Math.max(oldFrom, to + 1);
+        int enteredLow = Math.min(to, oldFrom - 1), enteredHigh = Math.max(from, oldTo + 1);
+        int offset = y * width;
+        for (int x = 0, p = rowBase[y]; x < width; x++, p += pixelStep) {
+            int current = acc[offset + x];
+            if (mode == Mode.AVERAGE) {
+                acc[offset + x] = current
+                        - sum(voxels, p, oldFrom, leftLow) - sum(voxels, p, leftHigh, oldTo)
+                        + sum(voxels, p, from, enteredLow) + sum(voxels, p, enteredHigh, to);
+                continue;
+            }
+            int entered = Math.max(extreme(voxels, p, from, enteredLow, sign), extreme(voxels, p, enteredHigh, to, sign));
+            if (entered >= current) {
+                acc[offset + x] = entered;
+            } else if (contains(voxels, p, oldFrom, leftLow, sign, current)
+                    || contains(voxels, p, leftHigh, oldTo, sign, current)) {
+                // The extreme left the slab; only these pixels are rescanned
+                acc[offset + x] = extreme(voxels, p, from, to, sign);
+            }
+        }
+    }
+
+    private void writeRow(int y, int size, Mode mode, int sign, short[] out) {
+        int offset = y * width;
+        for (int i = offset; i < offset + width; i++) {
+            out[i] = (short) (mode == Mode.AVERAGE ? Math.round(acc[i] / (double) size) : sign * acc[i]);
+        }
+    }
+
+    private int sum(ShortBuffer voxels, int p, int from, int to) {
+        int sum = 0;
+        for (int s = from; s <= to; s++) {
+            sum += voxels.get(p + s * sliceStep) & mask;
+        }
+        return sum;
+    }
+
+    // Largest sign * value over the slices, Integer.MIN_VALUE when there are none
+    private int extreme(ShortBuffer voxels, int p, int from, int to, int sign) {
+        int best = Integer.MIN_VALUE;
+        for (int s = from; s <= to; s++) {
+            best = Math.max(best, sign * (voxels.get(p + s * sliceStep) & mask));
+        }
+        return best;
+    }
+
+    private boolean contains(ShortBuffer voxels, int p, int from, int to, int sign, int value) {
+        for (int s = from; s <= to; s++) {
+            if (sign * (voxels.get(p + s * sliceStep) & mask) == value) return true;
+        }
+        return false;
+    }
+
+    // Slices read since creation, to compare sliding against full reductions
+    public long getSlicesRead() {
+        return slicesRead;
+    }
+}
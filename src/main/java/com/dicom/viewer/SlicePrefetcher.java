@@ -0,0 +1,180 @@
+package com.dicom.viewer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders the slices a scroll is heading towards into the render cache before they are asked
+ * for. Direction and speed are tracked per plane; the faster the scroll, the further ahead it
+ * renders, and reversing drops whatever was queued in the old direction. The tracking methods
+ * are called on the FX application thread; rendering happens on background threads.
+ */
+public class SlicePrefetcher {
+
+    private static final int MIN_AHEAD = 4;
+    private static final int MAX_AHEAD = 32;
+    // How far ahead to render, in seconds of scrolling at the current speed
+    private static final double LOOKAHEAD_SECONDS = 0.25;
+    // Weight of the newest step in the smoothed speed
+    private static final double SPEED_SMOOTHING = 0.3;
+
+    private static final class Track {
+        int lastIndex = -1;
+        int direction;
+        long lastNanos;
+        double slicesPerSecond;
+        final Map<Integer, Future<?>> pending = new HashMap<>();
+    }
+
+    private final RenderCache cache;
+    private final ExecutorService workers;
+    private final Map<Plane, Track> tracks = new HashMap<>();
+    private final ThreadLocal<short[]> scratch = ThreadLocal.withInitial(() -> new short[0]);
+    private volatile PlaneRenderer renderer;
+
+    private long shown, prefetchHits;
+    private final AtomicLong rendered = new AtomicLong();
+    private long cancelled;
+
+    public SlicePrefetcher(RenderCache cache, int threads) {
+        this.cache = cache;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "slice-prefetch");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+        for (Plane plane : Plane.values()) {
+            tracks.put(plane, new Track());
+        }
+    }
+
+    // New volume: queued work for the old one is dropped and frames it still finishes are discarded
+    public void setRenderer(PlaneRenderer renderer) {
+        this.renderer = renderer;
+        cancelAll();
+        for (Track track : tracks.values()) {
+            track.lastIndex = -1;
+            track.direction = 0;
+            track.slicesPerSecond = 0;
+        }
+    }
+
+    // Nothing queued is useful after a window change, since the window is part of every frame's key
+    public void cancelAll() {
+        for (Track track : tracks.values()) {
+            cancel(track.pending.values().iterator());
+        }
+    }
+
+    /**
+     * Called each time a view shows a slice. prefetched tells whether the frame came from an
+     * earlier prefetch, which is what the hit rate counts.
+     */
+    public void onShow(Plane plane, int index, WindowLut lut, boolean prefetched) {
+        shown++;
+        if (prefetched) prefetchHits++;
+
+        PlaneRenderer current = renderer;
+        if (current == null) return;
+        Track track = tracks.get(plane);
+        long now = System.nanoTime();
+        if (track.lastIndex < 0) {
+            track.lastIndex = index;
+            track.lastNanos = now;
+            return;
+        }
+        int step = index - track.lastIndex;
+        if (step == 0) return;
+
+        int direction = Integer.signum(step);
+        if (direction != track.direction) {
+            // Reversed: everything queued lies behind us now
+            cancel(track.pending.values().iterator());
+            track.slicesPerSecond = 0;
+        } else {
+            double seconds = Math.max(1e-3, (now - track.lastNanos) / 1e9);
+            double speed = Math.abs(step) / seconds;
+            track.slicesPerSecond = track.slicesPerSecond == 0 ? speed
+                    : track.slicesPerSecond + SPEED_SMOOTHING * (speed - track.slicesPerSecond);
+        }
+        track.direction = direction;
+        track.lastIndex = index;
+        track.lastNanos = now;
+
+        int ahead = (int) Math.max(MIN_AHEAD, Math.min(MAX_AHEAD, track.slicesPerSecond * LOOKAHEAD_SECONDS));
+        int count = plane.count(current.getVolume());
+        int first = index + direction;
+        int last = Math.max(0, Math.min(count - 1, index + direction * ahead));
+
+        // Drop finished work and anything that fell outside the window ahead
+        Iterator<Map.Entry<Integer, Future<?>>> it = track.pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Future<?>> entry = it.next();
+            int target = entry.getKey();
+            boolean inWindow = direction > 0 ? target >= first && target <= last : target <= first && target >= last;
+            if (entry.getValue().isDone()) {
+                it.remove();
+            } else if (!inWindow) {
+                if (entry.getValue().cancel(false)) cancelled++;
+                it.remove();
+            }
+        }
+
+        // Nearest first, so the next slice is ready soonest
+        for (int target = first; direction > 0 ? target <= last : target >= last; target += direction) {
+            if (track.pending.containsKey(target) || cache.contains(plane, target, lut)) continue;
+            int slice = target;
+            track.pending.put(target, workers.submit(() -> prefetch(current, plane, slice, lut)));
+        }
+    }
+
+    private void prefetch(PlaneRenderer source, Plane plane, int index, WindowLut lut) {
+        if (source != renderer || cache.contains(plane, index, lut)) return;
+
+        short[] buffer = scratch.get();
+        int size = source.planeSize(plane);
+        if (buffer.length < size) {
+            buffer = new short[size];
+            scratch.set(buffer);
+        }
+        RenderCache.Frame frame = source.render(plane, index, lut, buffer,
+                cache.reuse(plane.width(source.getVolume()), plane.height(source.getVolume())));
+        frame.prefetched = true;
+        // Checked under the cache lock, so a frame of the previous volume never lands after clear()
+        synchronized (cache) {
+            if (source == renderer) {
+                cache.put(plane, index, lut, frame);
+                rendered.incrementAndGet();
+            }
+        }
+    }
+
+    private void cancel(Iterator<Future<?>> futures) {
+        while (futures.hasNext()) {
+            if (futures.next().cancel(false)) cancelled++;
+            futures.remove();
+        }
+    }
+
+    // Share of shown slices that were already rendered by a prefetch
+    public double hitRate() {
+        return shown == 0 ? 0 : (double) prefetchHits / shown;
+    }
+
+    public long getShown() { return shown; }
+    public long getPrefetchHits() { return prefetchHits; }
+    public long getRendered() { return rendered.get(); }
+    public long getCancelled() { return cancelled; }
+
+    @Override
+    public String toString() {
+        return String.format("Prefetch: %d of %d shown slices prefetched (%.0f%%), %d rendered, %d cancelled",
+                prefetchHits, shown, hitRate() * 100, rendered.get(), cancelled);
+    }
+}
@@ -0,0 +1,204 @@
+package com.dicom.viewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The studies open side by side in one session, so a prior and a current study can be compared
+ * without reloading either. Each resident study is charged the heap its volume and pyramid hold
+ * against a byte budget. Past the budget, the least recently viewed studies are spilled to the
+ * volume cache on a background thread and then released; viewing one again reloads it from the
+ * cache as a memory mapping, which volumes mapped from the cache already are and which is not
+ * charged. The study viewed last is never spilled. Thread-safe.
+ */
+public class StudySession {
+
+    public static final class Study {
+        final File[] files;
+        final String name;
+        // Null once spilled; guarded by the session
+        private Series series;
+        private VolumePyramid pyramid;
+        private boolean spilling;
+
+        Study(File[] files, String name) {
+            this.files = files;
+            this.name = name;
+        }
+
+        public File[] getFiles() {
+            return files.clone();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Bytes on the heap; mapped volumes live in the page cache and cost only address space
+        long heapBytes() {
+            if (series == null) return 0;
+            long bytes = series.volume.getVoxels().isDirect() ? 0 : series.volume.sizeInBytes();
+            return bytes + (pyramid != null ? pyramid.sizeInBytes() : 0);
+        }
+    }
+
+    private final long budgetBytes;
+    private final VolumeCache spillCache;
+    // Access order, so iteration starts at the least recently viewed study
+    private final LinkedHashMap<List<File>, Study> studies = new LinkedHashMap<>(16, 0.75f, true);
+    private final ExecutorService spiller = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "study-spill");
+        t.setDaemon(true);
+        return t;
+    });
+    private Runnable listener = () -> { };
+    private long spills;
+
+    // spillCache may be null, in which case spilled studies are decoded from their files again
+    public StudySession(long budgetBytes, VolumeCache spillCache) {
+        this.budgetBytes = budgetBytes;
+        this.spillCache = spillCache;
+    }
+
+    // Budget from -Ddicom.viewer.sessionBudgetBytes, half the maximum heap by default
+    public static StudySession createDefault(VolumeCache spillCache) {
+        return new StudySession(Long.getLong("dicom.viewer.sessionBudgetBytes", Runtime.getRuntime().maxMemory() / 2),
+                spillCache);
+    }
+
+    // Called on the spill thread after a study was released
+    public synchronized void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a loaded series as the most recently viewed study, or gives a reopened study its
+     * series back, then spills whatever no longer fits the budget.
+     */
+    public synchronized Study open(File[] files, Series series) {
+        Study study = studies.computeIfAbsent(Arrays.asList(files.clone()), key -> new Study(files.clone(), nameOf(files)));
+        if (study.series != series) study.pyramid = null;
+        study.series = series;
+        study.spilling = false;
+        enforceBudget();
+        return study;
+    }
+
+    // Marks a study viewed; returns its series, or null when it was spilled and has to be reopened
+    public synchronized Series view(Study study) {
+        studies.get(Arrays.asList(study.files));
+        // Viewing a study again while it is being spilled keeps it
+        study.spilling = false;
+        return study.series;
+    }
+
+    public synchronized VolumePyramid getPyramid(Study study) {
+        return study.pyramid;
+    }
+
+    // Pyramids of resident studies are kept, so switching back does not rebuild them
+    public synchronized void setPyramid(Study study, VolumePyramid pyramid) {
+        if (study.series == null || pyramid.getLevel(0) != study.series.volume) return;
+        study.pyramid = pyramid;
+        enforceBudget();
+    }
+
+    public synchronized void close(Study study) {
+        studies.remove(Arrays.asList(study.files));
+        study.series = null;
+        study.pyramid = null;
+        study.spilling = false;
+    }
+
+    // Most recently viewed first
+    public synchronized List<Study> getStudies() {
+        List<Study> list = new ArrayList<>(studies.values());
+        Collections.reverse(list);
+        return list;
+    }
+
+    public synchronized long residentBytes(Study study) {
+        return study.heapBytes();
+    }
+
+    public synchronized long residentBytes() {
+        long bytes = 0;
+        for (Study study : studies.values()) bytes += study.heapBytes();
+        return bytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    // Name, size and residency, for choosers
+    public synchronized String describe(Study study) {
+        if (study.series == null) return study.name + " (on disk)";
+        Volume volume = study.series.volume;
+        String size = volume.getVoxels().isDirect() ? "mapped"
+                : String.format("%.0f MB", study.heapBytes() / 1e6);
+        return String.format("%s (%dx%dx%d, %s)", study.name, volume.getWidth(), volume.getHeight(),
+                volume.getDepth(), size);
+    }
+
+    // Spills least recently viewed studies, never the one viewed last, until the rest fit
+    private void enforceBudget() {
+        long resident = 0;
+        for (Study study : studies.values()) {
+            if (!study.spilling) resident += study.heapBytes();
+        }
+        Study current = null;
+        for (Study study : studies.values()) current = study;
+        for (Study study : studies.values()) {
+            if (resident <= budgetBytes) break;
+            if (study == current || study.spilling || study.heapBytes() == 0) continue;
+            resident -= study.heapBytes();
+            spill(study);
+        }
+    }
+
+    private void spill(Study study) {
+        study.spilling = true;
+        spills++;
+        spiller.execute(() -> {
+            Series series;
+            synchronized (this) {
+                if (!study.spilling) return;
+                series = study.series;
+            }
+            // Written outside the lock; the series stays usable until it is released below
+            try {
+                if (spillCache != null && !spillCache.contains(study.files)) spillCache.store(study.files, series);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Failed to spill " + study.name + " - " + e.getMessage());
+            }
+            Runnable notify;
+            synchronized (this) {
+                if (!study.spilling) return;
+                study.spilling = false;
+                study.series = null;
+                study.pyramid = null;
+                notify = listener;
+            }
+            notify.run();
+        });
+    }
+
+    private static String nameOf(File[] files) {
+        File parent = files.length > 0 ? files[0].getAbsoluteFile().getParentFile() : null;
+        return parent != null ? parent.getName() : "Study";
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Study session: %d studies, %.1f MB resident of %.1f MB budget, %d spills",
+                studies.size(), residentBytes() / 1e6, budgetBytes / 1e6, spills);
+    }
+}
@@ -0,0 +1,81 @@
+package com.dicom.viewer;
+
+/**
+ * Colour and opacity for direct volume rendering as lookup tables over every possible stored
+ * value, with the modality rescale folded in like WindowLut. Opacity ramps linearly from zero at
+ * low to maxOpacity at high (modality units) and is per millimetre of ray; colour runs from
+ * dark red through to near white across the same ramp. Immutable and shared by render threads.
+ */
+public class TransferFunction {
+
+    // Typical CT ranges, in Hounsfield units
+    public enum Preset {
+        BONE("Bone", 150, 1000, 0.25),
+        VESSELS("Contrast", 100, 400, 0.15),
+        SKIN("Skin", -600, -100, 0.05);
+
+        public final String label;
+        public final double low, high, maxOpacity;
+
+        Preset(String label, double low, double high, double maxOpacity) {
+            this.label = label;
+            this.low = low;
+            this.high = high;
+            this.maxOpacity = maxOpacity;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final boolean signed;
+    // Indexed by stored value & 0xFFFF
+    private final float[] opacity = new float[65536];
+    private final int[] color = new int[65536];
+    // Number of visible values up to and including each value, indexed in value order
+    private final int[] visibleBelow = new int[65536];
+
+    public TransferFunction(Preset preset, double slope, double intercept, boolean signed) {
+        this(preset.low, preset.high, preset.maxOpacity, slope, intercept, signed);
+    }
+
+    public TransferFunction(double low, double high, double maxOpacity, double slope, double intercept, boolean signed) {
+        this.signed = signed;
+        double span = Math.max(high - low, 1e-6);
+        int visible = 0;
+        for (int i = 0; i < 65536; i++) {
+            int stored = signed ? i - 32768 : i;
+            double t = (stored * slope + intercept - low) / span;
+            t = Math.max(0, Math.min(1, t));
+            int index = stored & 0xFFFF;
+            opacity[index] = (float) (t * maxOpacity);
+            int r = (int) (120 + 135 * t);
+            int g = (int) (40 + 200 * t);
+            int b = (int) (30 + 190 * t);
+            color[index] = (r << 16) | (g << 8) | b;
+            if (t > 0) visible++;
+            visibleBelow[i] = visible;
+        }
+    }
+
+    public boolean isSigned() { return signed; }
+
+    // Opacity per millimetre of ray for a stored value
+    public float opacity(int stored) {
+        return opacity[stored & 0xFFFF];
+    }
+
+    // RGB without alpha
+    public int color(int stored) {
+        return color[stored & 0xFFFF];
+    }
+
+    // True when no value in [min, max] (stored units, as read with the volume's sign) is visible
+    public boolean isTransparent(int min, int max) {
+        int offset = signed ? 32768 : 0;
+        int from = min + offset, to = max + offset;
+        return visibleBelow[to] - (from > 0 ? visibleBelow[from - 1] : 0) == 0;
+    }
+}
@@ -1,33 +1,29 @@
 package com.dicom.viewer;
 
 import javafx.application.Application;
-import javafx.embed.swing.SwingFXUtils;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.WritableImage;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.shape.Line;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
-import org.dcm4che3.data.Attributes;
-import org.dcm4che3.data.Tag;
-import org.dcm4che3.imageio.plugins.dcm.DicomImageReader;
-import org.dcm4che3.imageio.plugins.dcm.DicomImageReaderSpi;
-import org.dcm4che3.io.DicomInputStream;
-
-import javax.imageio.ImageIO;
-import javax.imageio.stream.ImageInputStream;
-import java.awt.image.BufferedImage;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.text.Font;
 
 public class ViewerUI extends Application {
@@ -46,9 +42,55 @@ public class ViewerUI extends Application {
     private int currentSagittalSlice = 0;
     private int currentAxialSlice = 0;
 
-    // Volume data - store as 3D array for MPR reconstruction
+    // Volume data - one flat voxel buffer for MPR reconstruction
     private List<DicomSlice> dicomSlices = new ArrayList<>();
-    private short[][][] volumeData; // 3D volume data [z][y][x]
+    private final SeriesLoader seriesLoader = new SeriesLoader();
+    // Decoded volumes on disk; also where the session spills studies that no longer fit its budget
+    private final VolumeCache volumeCache = VolumeCache.createDefault();
+    // Studies kept open side by side for comparison, within a heap budget
+    private final StudySession session = StudySession.createDefault(volumeCache);
+    private StudySession.Study currentStudy;
+    // Files of the series being loaded or shown
+    private File[] volumeFiles;
+    // Choices of studyChooser, most recently viewed first
+    private List<StudySession.Study> openStudies = new ArrayList<>();
+    private final ComboBox<String> studyChooser = new ComboBox<>();
+    private final Button closeStudyButton = new Button("Close");
+    private boolean isUpdatingStudies = false;
+    private Volume volume; // voxels in [z][y][x] order
+    // Optional brick-ordered copy for reformatting, enabled with -Ddicom.viewer.brickSize=16 (or 32)
+    private final int brickSize = Integer.getInteger("dicom.viewer.brickSize", 0);
+    private PlaneRenderer planeRenderer;
+
+    // Window/level lookup table; immutable, so render threads use whichever instance they were given
+    private WindowLut windowLut = new WindowLut(128, 256, 1.0, 0.0, true);
+    // Windowed frames of recently shown slices, shared by the three views
+    private final RenderCache renderCache = RenderCache.createDefault();
+    // Renders ahead of scrolling into renderCache
+    private final SlicePrefetcher prefetcher = new SlicePrefetcher(renderCache,
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    // Reformats and windows on worker threads, one lane per plane, handing frames back to presentFrame
+    private final RenderService renderService = new RenderService(renderCache, this::presentFrame,
+            Math.min(Plane.values().length, Runtime.getRuntime().availableProcessors()));
+    // Input marks views dirty; each pulse renders them once with the newest state
+    private final RenderScheduler renderScheduler = new RenderScheduler(this::renderPlane, this::renderOverlays,
+            this::refineCoarsePlanes);
+    // Frame rate, frame time and cache readout in the toolbar; costs one field check per frame while hidden
+    private final PerfHud perfHud = new PerfHud(renderCache, prefetcher, renderScheduler, session::residentBytes);
+    private final CheckBox perfHudToggle = new CheckBox("HUD");
+    // Views showing a downsampled pyramid level, redrawn at full resolution once the input settles
+    private final EnumSet<Plane> coarsePlanes = EnumSet.noneOf(Plane.class);
+    // Builds the pyramid of a loaded volume without holding up the next load
+    private final ExecutorService pyramidExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "volume-pyramid");
+        t.setDaemon(true);
+        return t;
+    });
+    // Reusable pixel buffers behind the three ImageViews
+    private final Map<Plane, PlaneImage> planeImages = new EnumMap<>(Plane.class);
+    private Label windowLabel = new Label("W/L: -");
+    private ComboBox<String> windowPresets = new ComboBox<>();
+    private double windowDragStartX, windowDragStartY, windowDragStartCenter, windowDragStartWidth;
     private int volumeWidth, volumeHeight, volumeDepth;
 
     // DICOM spatial information
@@ -57,17 +99,53 @@ public class ViewerUI extends Application {
     private double[] columnDirection = new double[3]; // Image orientation column direction
     private double[] normalDirection = new double[3]; // Slice normal direction
     private double[] pixelSpacing = new double[2]; // Pixel spacing in mm
-    private double sliceThickness = 1.0; // Slice thickness in mm
+    private double sliceSpacing = 1.0; // Signed distance between consecutive slices along normalDirection, in mm
+    // Voxel/patient transforms and nearest-slice lookup of the loaded series
+    private VolumeGeometry geometry;
+    // Scratch for conversions on every crosshair move, so they allocate nothing
+    private final double[] viewPatientPos = new double[3];
+    private final double[] voxelPos = new double[3];
 
     // Labels for slice information
     private Label coronalLabel = new Label("Coronal View");
     private Label sagittalLabel = new Label("Sagittal View");
     private Label axialLabel = new Label("Axial View");
+    private Label coordLabel = new Label("Patient Coords: (0.0, 0.0, 0.0)");
+    private Label sliceLabel = new Label("Slices: A:0/0 C:0/0 S:0/0");
 
     // Toolbar controls
     private CheckBox crosshairTool = new CheckBox("Crosshair Tool");
     private CheckBox axisLines = new CheckBox("Axis Lines");
     private CheckBox planeIntersections = new CheckBox("Plane Intersections");
+    // Oblique MPR: each view shows a freely oriented plane through the crosshair; shift-drag an axis to rotate
+    private CheckBox obliqueMode = new CheckBox("Oblique");
+    private final Map<Plane, ObliquePlane> obliquePlanes = new EnumMap<>(Plane.class);
+    // Thick-slab projection per view (absent means single slice) and its thickness in mm
+    private final Map<Plane, SlabProjector.Mode> slabModes = new EnumMap<>(Plane.class);
+    private final Map<Plane, Double> slabThickness = new EnumMap<>(Plane.class);
+    private final VolumeView volumeView = new VolumeView(VIEW_SIZE);
+    private VolumeStats volumeStats;
+
+    // Streaming loads; callbacks of a superseded load see a stale generation and do nothing
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "series-load");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final long PARTIAL_REFRESH_NANOS = 250_000_000L;
+    private int loadGeneration;
+    private boolean loading;
+    private LoadListener loadListener;
+    private VolumeStats.Builder loadingStats;
+    private final AtomicBoolean loadProgressScheduled = new AtomicBoolean();
+    // Window tags missing and no decoded slice to take one from yet
+    private boolean provisionalWindow;
+    private boolean axialShowsLoadedSlice;
+    private long lastPartialRefresh;
+    private ObliqueSampler obliqueSampler;
+    private final ProgressBar loadProgress = new ProgressBar(0);
+    private final Button cancelLoadButton = new Button("Cancel");
+    private final Label loadStatus = new Label();
     private Slider coronalSlider = new Slider();
     private Slider sagittalSlider = new Slider();
     private Slider axialSlider = new Slider();
@@ -108,6 +186,8 @@ public class ViewerUI extends Application {
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Enhanced DICOM Multi-Planar Reconstruction Viewer");
+        seriesLoader.setCache(volumeCache);
+        session.setListener(() -> Platform.runLater(this::refreshStudyChooser));
 
         // Create crosshair overlays
         coronalCrosshair = new CrosshairOverlay("coronal");
@@ -138,23 +218,39 @@ public class ViewerUI extends Application {
         sagittalPane.setStyle("-fx-background-color: lightgreen;");
         sagittalPane.setPrefSize(VIEW_SIZE, VIEW_SIZE);
 
+        // Right-drag adjusts window/level in any view
+        setupWindowLevelDrag(axialPane);
+        setupWindowLevelDrag(coronalPane);
+        setupWindowLevelDrag(sagittalPane);
+
         // Create sliders for manual slice navigation
         setupSliders();
 
         // Add labels and sliders
         VBox coronalContainer = new VBox(5);
         coronalContainer.getChildren().addAll(coronalLabel, coronalPane,
-                new Label("Coronal Slice:"), coronalSlider);
+                new Label("Coronal Slice:"), coronalSlider, createSlabControls(Plane.CORONAL));
 
         VBox sagittalContainer = new VBox(5);
         sagittalContainer.getChildren().addAll(sagittalLabel, sagittalPane,
-                new Label("Sagittal Slice:"), sagittalSlider);
+                new Label("Sagittal Slice:"), sagittalSlider, createSlabControls(Plane.SAGITTAL));
 
         VBox axialContainer = new VBox(5);
         axialContainer.getChildren().addAll(axialLabel, axialPane,
-                new Label("Axial Slice:"), axialSlider);
-
-        HBox viewContainer = new HBox(10, coronalContainer, sagittalContainer, axialContainer);
+                new Label("Axial Slice:"), axialSlider, createSlabControls(Plane.AXIAL));
+
+        // 3D view: left-drag rotates, the transfer function picks what is visible
+        ComboBox<TransferFunction.Preset> transferPresets = new ComboBox<>();
+        transferPresets.getItems().addAll(TransferFunction.Preset.values());
+        transferPresets.setValue(TransferFunction.Preset.BONE);
+        transferPresets.setOnAction(e -> volumeView.setPreset(transferPresets.getValue()));
+        Button resetVolumeButton = new Button("Reset");
+        resetVolumeButton.setOnAction(e -> volumeView.resetView());
+        VBox volumeContainer = new VBox(5);
+        volumeContainer.getChildren().addAll(new Label("3D View"), volumeView,
+                new HBox(5, new Label("Transfer:"), transferPresets, resetVolumeButton));
+
+        HBox viewContainer = new HBox(10, coronalContainer, sagittalContainer, axialContainer, volumeContainer);
         viewContainer.setSpacing(5);
         viewContainer.setPadding(new Insets(10));
 
@@ -172,7 +268,7 @@ public class ViewerUI extends Application {
         root.setTop(toolbar);
         root.setCenter(viewContainer);
 
-        primaryStage.setScene(new Scene(root, 1400, 700));
+        primaryStage.setScene(new Scene(root, 1800, 700));
         primaryStage.show();
 
         setupEnhancedCrosshairInteractions();
@@ -196,6 +292,18 @@ public class ViewerUI extends Application {
     private ToolBar createEnhancedToolbar(Stage primaryStage) {
         Button loadButton = new Button("Load DICOM Folder");
         loadButton.setOnAction(e -> loadDicomVolume(primaryStage));
+        cancelLoadButton.setOnAction(e -> seriesLoader.cancel());
+        loadProgress.setVisible(false);
+        cancelLoadButton.setVisible(false);
+
+        studyChooser.setPromptText("No study");
+        studyChooser.setOnAction(e -> {
+            if (isUpdatingStudies) return;
+            int index = studyChooser.getSelectionModel().getSelectedIndex();
+            if (index >= 0 && index < openStudies.size()) showStudy(openStudies.get(index));
+        });
+        closeStudyButton.setOnAction(e -> closeStudy());
+        closeStudyButton.setDisable(true);
 
         Separator sep1 = new Separator();
 
@@ -211,24 +319,40 @@ public class ViewerUI extends Application {
         syncViewsButton.setOnAction(e -> synchronizeViews());
 
         // Add coordinate display
-        Label coordLabel = new Label("Patient Coords: (0.0, 0.0, 0.0)");
         coordLabel.setId("coordDisplay");
 
         // Add slice position display
-        Label sliceLabel = new Label("Slices: A:0/0 C:0/0 S:0/0");
         sliceLabel.setId("sliceDisplay");
 
+        // Window presets; "Default" goes back to the series' own window
+        windowPresets.getItems().add("Default");
+        for (WindowLut.Preset preset : WindowLut.Preset.values()) {
+            windowPresets.getItems().add(preset.label);
+        }
+        // Percentile windows from the intensity statistics, of the volume or of the axial slice on screen
+        windowPresets.getItems().addAll("Auto", "Auto (slice)");
+        windowPresets.setValue("Default");
+        windowPresets.setOnAction(e -> applyWindowPreset(windowPresets.getValue()));
+
+        perfHudToggle.setOnAction(e -> perfHud.setEnabled(perfHudToggle.isSelected()));
+
         return new ToolBar(
-                loadButton, sep1,
+                loadButton, loadProgress, cancelLoadButton, loadStatus,
+                new Label("Study:"), studyChooser, closeStudyButton, sep1,
                 new Label("Crosshair:"), crosshairTool,
                 new Label("Axis Lines:"), axisLines,
                 new Label("Intersections:"), planeIntersections,
+                obliqueMode,
                 new Separator(),
                 resetViewsButton, syncViewsButton,
                 new Separator(),
                 coordLabel,
                 new Separator(),
-                sliceLabel);
+                sliceLabel,
+                new Separator(),
+                new Label("Window:"), windowPresets, windowLabel,
+                new Separator(),
+                perfHudToggle, perfHud.getLabel());
     }
 
     private void setupEnhancedCrosshairInteractions() {
@@ -269,6 +393,13 @@ public class ViewerUI extends Application {
         double y = event.getY();
         
         isDragging = true;
+        renderScheduler.recordEvent();
+        
+        if (obliqueMode.isSelected()) {
+            handleObliqueCrosshairMove(planeForView(viewType), x, y, dragType, event.getAngle());
+            isDragging = false;
+            return;
+        }
         
         switch (viewType.toLowerCase()) {
             case "axial":
@@ -388,68 +519,39 @@ public class ViewerUI extends Application {
 
     // Enhanced coordinate conversion methods
     private double[] convertAxialViewToPatient(double viewX, double viewY, int sliceIndex) {
-        if (sliceIndex >= dicomSlices.size()) return crosshairPatientPos;
-        
-        DicomSlice slice = dicomSlices.get(sliceIndex);
-        
-        // Convert view coordinates to image pixel coordinates
-        double imageX = (viewX / VIEW_SIZE) * slice.columns;
-        double imageY = (viewY / VIEW_SIZE) * slice.rows;
-        
-        // Convert image coordinates to patient coordinates
-        double[] patientPos = new double[3];
-        for (int i = 0; i < 3; i++) {
-            patientPos[i] = slice.imagePosition[i] +
-                    (imageX * slice.pixelSpacing[0] * rowDirection[i]) +
-                    (imageY * slice.pixelSpacing[1] * columnDirection[i]);
-        }
-        
-        return patientPos;
+        if (geometry == null || sliceIndex >= dicomSlices.size()) return crosshairPatientPos;
+
+        // Convert view coordinates to image pixel coordinates, then to patient coordinates
+        double imageX = (viewX / VIEW_SIZE) * volumeWidth;
+        double imageY = (viewY / VIEW_SIZE) * volumeHeight;
+        geometry.voxelToPatient(imageX, imageY, sliceIndex, viewPatientPos);
+        return viewPatientPos;
     }
 
     private double[] convertCoronalViewToPatient(double viewX, double viewY, int rowIndex) {
-        if (dicomSlices.isEmpty()) return crosshairPatientPos;
-        
+        if (geometry == null) return crosshairPatientPos;
+
         // For coronal view: X axis = image columns, Y axis = slice depth
         double imageX = (viewX / VIEW_SIZE) * volumeWidth;
         double sliceZ = (viewY / VIEW_SIZE) * volumeDepth;
-        
-        DicomSlice refSlice = dicomSlices.get(0);
-        
-        double[] patientPos = new double[3];
-        for (int i = 0; i < 3; i++) {
-            patientPos[i] = refSlice.imagePosition[i] +
-                    (imageX * refSlice.pixelSpacing[0] * rowDirection[i]) +
-                    (rowIndex * refSlice.pixelSpacing[1] * columnDirection[i]) +
-                    (sliceZ * sliceThickness * normalDirection[i]);
-        }
-        
-        return patientPos;
+        geometry.voxelToPatient(imageX, rowIndex, sliceZ, viewPatientPos);
+        return viewPatientPos;
     }
 
     private double[] convertSagittalViewToPatient(double viewX, double viewY, int columnIndex) {
-        if (dicomSlices.isEmpty()) return crosshairPatientPos;
-        
+        if (geometry == null) return crosshairPatientPos;
+
         // For sagittal view: X axis = image rows, Y axis = slice depth
         double imageY = (viewX / VIEW_SIZE) * volumeHeight;
         double sliceZ = (viewY / VIEW_SIZE) * volumeDepth;
-        
-        DicomSlice refSlice = dicomSlices.get(0);
-        
-        double[] patientPos = new double[3];
-        for (int i = 0; i < 3; i++) {
-            patientPos[i] = refSlice.imagePosition[i] +
-                    (columnIndex * refSlice.pixelSpacing[0] * rowDirection[i]) +
-                    (imageY * refSlice.pixelSpacing[1] * columnDirection[i]) +
-                    (sliceZ * sliceThickness * normalDirection[i]);
-        }
-        
-        return patientPos;
+        geometry.voxelToPatient(columnIndex, imageY, sliceZ, viewPatientPos);
+        return viewPatientPos;
     }
 
     private void setupToolbarActions() {
         crosshairTool.setOnAction(e -> updateCrosshairVisibility());
         axisLines.setOnAction(e -> updateAxisLinesVisibility());
+        obliqueMode.setOnAction(e -> updateObliqueMode());
         planeIntersections.setOnAction(e -> updatePlaneIntersectionVisibility());
     }
 
@@ -476,7 +578,15 @@ public class ViewerUI extends Application {
     }
 
     private void updateAllCrosshairs() {
+        renderScheduler.requestOverlays();
+    }
+
+    private void drawCrosshairs() {
         if (!crosshairTool.isSelected()) return;
+        if (obliqueMode.isSelected()) {
+            drawObliqueCrosshairs();
+            return;
+        }
         
         updateCrosshairForAxialView();
         updateCrosshairForCoronalView();
@@ -484,36 +594,23 @@ public class ViewerUI extends Application {
     }
 
     private void updateCrosshairForAxialView() {
-        if (axialView.getImage() == null || currentAxialSlice >= dicomSlices.size()) return;
-        
-        DicomSlice currentSlice = dicomSlices.get(currentAxialSlice);
-        
-        // Convert patient coordinates to image pixel coordinates
-        double[] imageCoords = convertPatientToImageCoords(crosshairPatientPos, currentSlice);
-        
-        // Convert image coordinates to view coordinates
-        double viewX = (imageCoords[0] / currentSlice.columns) * VIEW_SIZE;
-        double viewY = (imageCoords[1] / currentSlice.rows) * VIEW_SIZE;
-        
+        if (axialView.getImage() == null || geometry == null) return;
+
+        // Convert patient coordinates to image pixel coordinates, then to view coordinates
+        geometry.patientToVoxel(crosshairPatientPos, voxelPos);
+        double viewX = (voxelPos[0] / volumeWidth) * VIEW_SIZE;
+        double viewY = (voxelPos[1] / volumeHeight) * VIEW_SIZE;
+
         axialCrosshair.updatePosition(viewX, viewY);
     }
 
     private void updateCrosshairForCoronalView() {
-        if (coronalView.getImage() == null) return;
-        
-        DicomSlice refSlice = dicomSlices.get(0);
-        
+        if (coronalView.getImage() == null || geometry == null) return;
+
         // Find X position in the coronal view
-        double[] toPoint = new double[3];
-        for (int i = 0; i < 3; i++) {
-            toPoint[i] = crosshairPatientPos[i] - refSlice.imagePosition[i];
-        }
-        
-        double xProjection = toPoint[0] * rowDirection[0] +
-                toPoint[1] * rowDirection[1] +
-                toPoint[2] * rowDirection[2];
-        double viewX = (xProjection / refSlice.pixelSpacing[0] / volumeWidth) * VIEW_SIZE;
-        
+        geometry.patientToVoxel(crosshairPatientPos, voxelPos);
+        double viewX = (voxelPos[0] / volumeWidth) * VIEW_SIZE;
+
         // Find Y position (slice depth)
         int sliceIndex = findClosestAxialSlice(crosshairPatientPos);
         double viewY = ((double) sliceIndex / volumeDepth) * VIEW_SIZE;
@@ -522,21 +619,12 @@ public class ViewerUI extends Application {
     }
 
     private void updateCrosshairForSagittalView() {
-        if (sagittalView.getImage() == null) return;
-        
-        DicomSlice refSlice = dicomSlices.get(0);
-        
+        if (sagittalView.getImage() == null || geometry == null) return;
+
         // Find Y position in the sagittal view
-        double[] toPoint = new double[3];
-        for (int i = 0; i < 3; i++) {
-            toPoint[i] = crosshairPatientPos[i] - refSlice.imagePosition[i];
-        }
-        
-        double yProjection = toPoint[0] * columnDirection[0] +
-                toPoint[1] * columnDirection[1] +
-                toPoint[2] * columnDirection[2];
-        double viewX = (yProjection / refSlice.pixelSpacing[1] / volumeHeight) * VIEW_SIZE;
-        
+        geometry.patientToVoxel(crosshairPatientPos, voxelPos);
+        double viewX = (voxelPos[1] / volumeHeight) * VIEW_SIZE;
+
         // Find Y position (slice depth)
         int sliceIndex = findClosestAxialSlice(crosshairPatientPos);
         double viewY = ((double) sliceIndex / volumeDepth) * VIEW_SIZE;
@@ -544,116 +632,47 @@ public class ViewerUI extends Application {
         sagittalCrosshair.updatePosition(viewX, viewY);
     }
 
-    private double[] convertPatientToImageCoords(double[] patientPos, DicomSlice slice) {
-        double[] imageCoords = new double[2];
-        
-        // Calculate the vector from slice origin to patient position
-        double[] toPoint = new double[3];
-        for (int i = 0; i < 3; i++) {
-            toPoint[i] = patientPos[i] - slice.imagePosition[i];
-        }
-        
-        // Project onto image axes
-        double xProjection = toPoint[0] * rowDirection[0] +
-                toPoint[1] * rowDirection[1] +
-                toPoint[2] * rowDirection[2];
-        double yProjection = toPoint[0] * columnDirection[0] +
-                toPoint[1] * columnDirection[1] +
-                toPoint[2] * columnDirection[2];
-        
-        // Convert to pixel coordinates
-        imageCoords[0] = xProjection / slice.pixelSpacing[0];
-        imageCoords[1] = yProjection / slice.pixelSpacing[1];
-        
-        return imageCoords;
-    }
-
+    // Binary search over the slice positions along the normal
     private int findClosestAxialSlice(double[] patientPos) {
-        if (dicomSlices.isEmpty()) return 0;
-        
-        double minDistance = Double.MAX_VALUE;
-        int closestSlice = 0;
-        
-        for (int i = 0; i < dicomSlices.size(); i++) {
-            DicomSlice slice = dicomSlices.get(i);
-            double distance = 0;
-            for (int j = 0; j < 3; j++) {
-                double diff = patientPos[j] - slice.imagePosition[j];
-                distance += diff * diff;
-            }
-            distance = Math.sqrt(distance);
-            
-            if (distance < minDistance) {
-                minDistance = distance;
-                closestSlice = i;
-            }
-        }
-        
-        return closestSlice;
+        return geometry != null ? geometry.nearestSlice(patientPos) : 0;
     }
 
     private void updateCrosshairPosition(double[] newPatientPos) {
-        crosshairPatientPos = newPatientPos.clone();
-        updateCoordinateDisplay();
+        if (newPatientPos != crosshairPatientPos) System.arraycopy(newPatientPos, 0, crosshairPatientPos, 0, 3);
         updateAllCrosshairs();
     }
 
     private void updateCoordinateDisplay() {
-        Label coordLabel = (Label) ((ToolBar) ((BorderPane) coronalView.getScene().getRoot()).getTop())
-                .getItems().stream()
-                .filter(item -> item instanceof Label && ((Label) item).getId() != null && 
-                        ((Label) item).getId().equals("coordDisplay"))
-                .findFirst().orElse(null);
-        
-        if (coordLabel != null) {
-            coordLabel.setText(String.format("Patient Coords: (%.1f, %.1f, %.1f)", 
-                    crosshairPatientPos[0], crosshairPatientPos[1], crosshairPatientPos[2]));
-        }
+        coordLabel.setText(String.format("Patient Coords: (%.1f, %.1f, %.1f)", 
+                crosshairPatientPos[0], crosshairPatientPos[1], crosshairPatientPos[2]));
     }
 
     private void updateSliceDisplay() {
-        Label sliceLabel = (Label) ((ToolBar) ((BorderPane) coronalView.getScene().getRoot()).getTop())
-                .getItems().stream()
-                .filter(item -> item instanceof Label && ((Label) item).getId() != null && 
-                        ((Label) item).getId().equals("sliceDisplay"))
-                .findFirst().orElse(null);
-        
-        if (sliceLabel != null) {
-            sliceLabel.setText(String.format("Slices: A:%d/%d C:%d/%d S:%d/%d", 
-                    currentAxialSlice + 1, volumeDepth,
-                    currentCoronalSlice + 1, volumeHeight,
-                    currentSagittalSlice + 1, volumeWidth));
-        }
+        sliceLabel.setText(String.format("Slices: A:%d/%d C:%d/%d S:%d/%d", 
+                currentAxialSlice + 1, volumeDepth,
+                currentCoronalSlice + 1, volumeHeight,
+                currentSagittalSlice + 1, volumeWidth));
     }
 
     private void updateCrosshairFromSliceChange(String viewType, int newSlicePosition) {
-        if (dicomSlices.isEmpty()) return;
-        
-        DicomSlice refSlice = dicomSlices.get(0);
-        double[] newPatientPos = crosshairPatientPos.clone();
-        
+        if (geometry == null) return;
+
+        // Moves the crosshair onto the new slice and keeps its position within the slice
+        geometry.patientToVoxel(crosshairPatientPos, voxelPos);
         switch (viewType.toLowerCase()) {
             case "axial":
-                if (newSlicePosition < dicomSlices.size()) {
-                    DicomSlice newSlice = dicomSlices.get(newSlicePosition);
-                    newPatientPos = newSlice.imagePosition.clone();
-                }
+                voxelPos[2] = newSlicePosition;
                 break;
             case "coronal":
-                for (int i = 0; i < 3; i++) {
-                    newPatientPos[i] = refSlice.imagePosition[i] +
-                            (newSlicePosition * refSlice.pixelSpacing[1] * columnDirection[i]);
-                }
+                voxelPos[1] = newSlicePosition;
                 break;
             case "sagittal":
-                for (int i = 0; i < 3; i++) {
-                    newPatientPos[i] = refSlice.imagePosition[i] +
-                            (newSlicePosition * refSlice.pixelSpacing[0] * rowDirection[i]);
-                }
+                voxelPos[0] = newSlicePosition;
                 break;
         }
-        
-        updateCrosshairPosition(newPatientPos);
+        geometry.voxelToPatient(voxelPos[0], voxelPos[1], voxelPos[2], crosshairPatientPos);
+
+        updateAllCrosshairs();
     }
 
     private void synchronizeAllViews() {
@@ -682,41 +701,22 @@ public class ViewerUI extends Application {
             updateSagittalSlice(newSagittalSlice);
         }
         
-        updateSliceDisplay();
         isUpdatingSliders = false;
     }
 
     private int calculateCoronalSliceFromPatientPos(double[] patientPos) {
-        if (dicomSlices.isEmpty()) return 0;
-        
-        DicomSlice refSlice = dicomSlices.get(0);
-        double[] toPoint = new double[3];
-        for (int i = 0; i < 3; i++) {
-            toPoint[i] = patientPos[i] - refSlice.imagePosition[i];
-        }
-        
-        double yProjection = toPoint[0] * columnDirection[0] +
-                toPoint[1] * columnDirection[1] +
-                toPoint[2] * columnDirection[2];
-        
-        int sliceIndex = (int) (yProjection / refSlice.pixelSpacing[1]);
+        if (geometry == null) return 0;
+
+        geometry.patientToVoxel(patientPos, voxelPos);
+        int sliceIndex = (int) voxelPos[1];
         return Math.max(0, Math.min(volumeHeight - 1, sliceIndex));
     }
 
     private int calculateSagittalSliceFromPatientPos(double[] patientPos) {
-        if (dicomSlices.isEmpty()) return 0;
-        
-        DicomSlice refSlice = dicomSlices.get(0);
-        double[] toPoint = new double[3];
-        for (int i = 0; i < 3; i++) {
-            toPoint[i] = patientPos[i] - refSlice.imagePosition[i];
-        }
-        
-        double xProjection = toPoint[0] * rowDirection[0] +
-                toPoint[1] * rowDirection[1] +
-                toPoint[2] * rowDirection[2];
-        
-        int sliceIndex = (int) (xProjection / refSlice.pixelSpacing[0]);
+        if (geometry == null) return 0;
+
+        geometry.patientToVoxel(patientPos, voxelPos);
+        int sliceIndex = (int) voxelPos[0];
         return Math.max(0, Math.min(volumeWidth - 1, sliceIndex));
     }
 
@@ -729,6 +729,7 @@ public class ViewerUI extends Application {
         coronalSlider.setShowTickMarks(true);
         coronalSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
             if (!isUpdatingSliders) {
+                if (!isDragging) renderScheduler.recordEvent();
                 updateCoronalSlice(newVal.intValue());
                 updateCrosshairFromSliceChange("coronal", newVal.intValue());
                 updateAllCrosshairs();
@@ -743,6 +744,7 @@ public class ViewerUI extends Application {
         sagittalSlider.setShowTickMarks(true);
         sagittalSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
             if (!isUpdatingSliders) {
+                if (!isDragging) renderScheduler.recordEvent();
                 updateSagittalSlice(newVal.intValue());
                 updateCrosshairFromSliceChange("sagittal", newVal.intValue());
                 updateAllCrosshairs();
@@ -757,6 +759,7 @@ public class ViewerUI extends Application {
         axialSlider.setShowTickMarks(true);
         axialSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
             if (!isUpdatingSliders) {
+                if (!isDragging) renderScheduler.recordEvent();
                 updateAxialSlice(newVal.intValue());
                 updateCrosshairFromSliceChange("axial", newVal.intValue());
                 updateAllCrosshairs();
@@ -766,18 +769,33 @@ public class ViewerUI extends Application {
 
     // Original click handlers for backward compatibility
     private void handleAxialClick(double x, double y) {
+        renderScheduler.recordEvent();
+        if (obliqueMode.isSelected()) {
+            handleObliqueCrosshairMove(Plane.AXIAL, x, y, "center", 0);
+            return;
+        }
         double[] patientPos = convertAxialViewToPatient(x, y, currentAxialSlice);
         updateCrosshairPosition(patientPos);
         synchronizeAllViews();
     }
 
     private void handleCoronalClick(double x, double y) {
+        renderScheduler.recordEvent();
+        if (obliqueMode.isSelected()) {
+            handleObliqueCrosshairMove(Plane.CORONAL, x, y, "center", 0);
+            return;
+        }
         double[] patientPos = convertCoronalViewToPatient(x, y, currentCoronalSlice);
         updateCrosshairPosition(patientPos);
         synchronizeAllViews();
     }
 
     private void handleSagittalClick(double x, double y) {
+        renderScheduler.recordEvent();
+        if (obliqueMode.isSelected()) {
+            handleObliqueCrosshairMove(Plane.SAGITTAL, x, y, "center", 0);
+            return;
+        }
         double[] patientPos = convertSagittalViewToPatient(x, y, currentSagittalSlice);
         updateCrosshairPosition(patientPos);
         synchronizeAllViews();
@@ -807,9 +825,11 @@ public class ViewerUI extends Application {
         DicomSlice centerSlice = dicomSlices.get(currentAxialSlice);
         crosshairPatientPos = centerSlice.imagePosition.clone();
         
+        // Oblique planes go back to the orthogonal orientation through the new center
+        if (obliqueMode.isSelected()) {
+            updateObliqueMode();
+        }
         updateAllCrosshairs();
-        updateCoordinateDisplay();
-        updateSliceDisplay();
     }
 
     private void synchronizeViews() {
@@ -817,266 +837,727 @@ public class ViewerUI extends Application {
         synchronizeAllViews();
     }
 
+    // Slice changes only record the new index; the view is rendered on the next pulse
     private void updateAxialSlice(int sliceIndex) {
-        if (sliceIndex < 0 || sliceIndex >= dicomSlices.size()) return;
+        if (volume == null || sliceIndex < 0 || sliceIndex >= volumeDepth) return;
         
         currentAxialSlice = sliceIndex;
-        DicomSlice slice = dicomSlices.get(sliceIndex);
-        
-        if (slice.image != null) {
-            WritableImage fxImage = SwingFXUtils.toFXImage(slice.image, null);
-            axialView.setImage(fxImage);
-            axialView.setFitWidth(VIEW_SIZE);
-            axialView.setFitHeight(VIEW_SIZE);
-            axialView.setPreserveRatio(true);
-        }
-        
-        updateSliceDisplay();
-        redrawAxialMeasurements();
+        renderScheduler.requestPlane(Plane.AXIAL);
     }
 
     private void updateCoronalSlice(int rowIndex) {
-        if (volumeData == null || rowIndex < 0 || rowIndex >= volumeHeight) return;
+        if (volume == null || rowIndex < 0 || rowIndex >= volumeHeight) return;
         
         currentCoronalSlice = rowIndex;
-        BufferedImage coronalImage = generateCoronalSlice(rowIndex);
-        
-        if (coronalImage != null) {
-            WritableImage fxImage = SwingFXUtils.toFXImage(coronalImage, null);
-            coronalView.setImage(fxImage);
-            coronalView.setFitWidth(VIEW_SIZE);
-            coronalView.setFitHeight(VIEW_SIZE);
-            coronalView.setPreserveRatio(true);
-        }
-        
-        updateSliceDisplay();
-        redrawCoronalMeasurements();
+        renderScheduler.requestPlane(Plane.CORONAL);
     }
 
     private void updateSagittalSlice(int columnIndex) {
-        if (volumeData == null || columnIndex < 0 || columnIndex >= volumeWidth) return;
+        if (volume == null || columnIndex < 0 || columnIndex >= volumeWidth) return;
         
         currentSagittalSlice = columnIndex;
-        BufferedImage sagittalImage = generateSagittalSlice(columnIndex);
-        
-        if (sagittalImage != null) {
-            WritableImage fxImage = SwingFXUtils.toFXImage(sagittalImage, null);
-            sagittalView.setImage(fxImage);
-            sagittalView.setFitWidth(VIEW_SIZE);
-            sagittalView.setFitHeight(VIEW_SIZE);
-            sagittalView.setPreserveRatio(true);
+        renderScheduler.requestPlane(Plane.SAGITTAL);
+    }
+
+    // Pulse-time render of one view with its newest slice index, or its oblique plane
+    private void renderPlane(Plane plane) {
+        if (!requestProjection(plane)) {
+            showPlane(plane, currentIndex(plane));
         }
-        
+        PerfEvents.OverlayRedraw event = new PerfEvents.OverlayRedraw();
+        event.begin();
+        switch (plane) {
+            case AXIAL: redrawAxialMeasurements(); break;
+            case CORONAL: redrawCoronalMeasurements(); break;
+            default: redrawSagittalMeasurements(); break;
+        }
+        if (event.shouldCommit()) {
+            event.overlay = "measurements";
+            event.plane = plane.name();
+            event.commit();
+        }
+    }
+
+    // Pulse-time redraw of everything that follows the crosshair and slice indices
+    private void renderOverlays() {
+        PerfEvents.OverlayRedraw event = new PerfEvents.OverlayRedraw();
+        event.begin();
+        drawCrosshairs();
+        updateCoordinateDisplay();
         updateSliceDisplay();
-        redrawSagittalMeasurements();
+        if (event.shouldCommit()) {
+            event.overlay = "crosshairs";
+            event.commit();
+        }
     }
 
-    private BufferedImage generateCoronalSlice(int rowIndex) {
-        if (volumeData == null) return null;
-        
-        BufferedImage coronalImage = new BufferedImage(volumeWidth, volumeDepth, BufferedImage.TYPE_BYTE_GRAY);
-        
-        // Use window center/width from the first slice
-        DicomSlice refSlice = dicomSlices.get(0);
-        double wc = refSlice.windowCenter;
-        double ww = refSlice.windowWidth;
+    // A cached frame is shown straight away; anything else is reformatted and windowed off the FX thread
+    private void showPlane(Plane plane, int index) {
+        if (volume == null) return;
+        if (loading) {
+            // Slices are still landing, so nothing rendered now may be cached
+            if (plane == Plane.AXIAL) axialShowsLoadedSlice = loadListener != null && loadListener.loaded[index];
+            renderService.request(plane, index, windowLut, false);
+            return;
+        }
         
-        for (int z = 0; z < volumeDepth; z++) {
-            for (int x = 0; x < volumeWidth; x++) {
-                if (z < volumeData.length && rowIndex < volumeData[z].length && x < volumeData[z][rowIndex].length) {
-                    short pixelValue = volumeData[z][rowIndex][x];
-                    // Windowing formula
-                    int grayValue = (int) (((pixelValue - (wc - 0.5)) / (ww - 1) + 0.5) * 255.0);
-                    grayValue = Math.max(0, Math.min(255, grayValue));
-                    int rgb = (grayValue << 16) | (grayValue << 8) | grayValue;
-                    coronalImage.setRGB(x, volumeDepth - 1 - z, rgb);
-                }
+        RenderCache.Frame frame = renderCache.get(plane, index, windowLut);
+        boolean prefetched = frame != null && frame.prefetched;
+        // While dragging, a miss is reformatted from the coarsest level that still fills the view
+        int level = frame == null && renderScheduler.isInteracting() ? planeRenderer.levelFor(plane, VIEW_SIZE) : 0;
+        if (level > 0) {
+            coarsePlanes.add(plane);
+            renderService.requestLevel(plane, index, level, windowLut);
+        } else if (frame == null) {
+            coarsePlanes.remove(plane);
+            renderService.request(plane, index, windowLut, true);
+        } else {
+            coarsePlanes.remove(plane);
+            if (prefetched) frame.prefetched = false;
+            presentFrame(plane, index, frame, System.nanoTime());
+            renderCache.release(frame);
+        }
+        prefetcher.onShow(plane, index, windowLut, prefetched);
+    }
+
+    // Re-windows the slice on screen; the transient windows of a drag are not cached
+    private void rewindowPlane(Plane plane) {
+        if (volume == null) return;
+        if (!requestProjection(plane)) {
+            renderService.request(plane, currentIndex(plane), windowLut, false);
+        }
+    }
+
+    // The input has settled: views drawn from a coarse level get their full-resolution frame
+    private void refineCoarsePlanes() {
+        for (Plane plane : coarsePlanes) {
+            renderScheduler.requestPlane(plane);
+        }
+        coarsePlanes.clear();
+    }
+
+    // Oblique and slab views are computed afresh on every request, outside the cache and prefetcher
+    private boolean requestProjection(Plane plane) {
+        if (volume == null) return false;
+        if (obliqueMode.isSelected() && obliquePlanes.containsKey(plane)) {
+            renderService.requestOblique(plane, obliquePlanes.get(plane), windowLut);
+            return true;
+        }
+        SlabProjector.Mode mode = slabModes.get(plane);
+        if (mode != null) {
+            renderService.requestSlab(plane, currentIndex(plane), slabSlices(plane), mode, windowLut);
+            return true;
+        }
+        return false;
+    }
+
+    // Slab thickness in slices along the plane normal, at least one
+    private int slabSlices(Plane plane) {
+        double spacing;
+        switch (plane) {
+            case AXIAL: spacing = Math.abs(sliceSpacing); break;
+            case CORONAL: spacing = pixelSpacing[1]; break;
+            default: spacing = pixelSpacing[0]; break;
+        }
+        return Math.max(1, (int) Math.round(slabThickness.get(plane) / spacing));
+    }
+
+    private HBox createSlabControls(Plane plane) {
+        ComboBox<String> mode = new ComboBox<>();
+        mode.getItems().add("Off");
+        for (SlabProjector.Mode m : SlabProjector.Mode.values()) {
+            mode.getItems().add(m.label);
+        }
+        mode.setValue("Off");
+        Slider thickness = new Slider(1, 50, 10);
+        Label thicknessLabel = new Label("10 mm");
+        slabThickness.put(plane, thickness.getValue());
+
+        mode.setOnAction(e -> {
+            slabModes.remove(plane);
+            for (SlabProjector.Mode m : SlabProjector.Mode.values()) {
+                if (m.label.equals(mode.getValue())) slabModes.put(plane, m);
             }
+            renderScheduler.requestPlane(plane);
+        });
+        thickness.valueProperty().addListener((obs, oldVal, newVal) -> {
+            slabThickness.put(plane, newVal.doubleValue());
+            thicknessLabel.setText(String.format("%.0f mm", newVal.doubleValue()));
+            if (slabModes.containsKey(plane)) {
+                renderScheduler.recordEvent();
+                renderScheduler.requestPlane(plane);
+            }
+        });
+        return new HBox(5, new Label("Slab:"), mode, thickness, thicknessLabel);
+    }
+
+    // Copies a finished frame into the view's pixel buffer; FX thread only
+    private void presentFrame(Plane plane, int index, RenderCache.Frame frame, long requestNanos) {
+        PerfEvents.ImageUpload event = new PerfEvents.ImageUpload();
+        event.begin();
+        PlaneImage image = planeImages.get(plane);
+        if (image == null) {
+            image = new PlaneImage();
+            planeImages.put(plane, image);
+        }
+        boolean resized = image.resize(frame.width, frame.height);
+        image.render(frame);
+        if (event.shouldCommit()) {
+            event.plane = plane.name();
+            event.bytes = frame.sizeInBytes();
+            event.commit();
+        }
+        perfHud.recordFrame(requestNanos);
+        if (resized) {
+            ImageView view = viewFor(plane);
+            view.setImage(image.getImage());
+            view.setFitWidth(VIEW_SIZE);
+            view.setFitHeight(VIEW_SIZE);
+            view.setPreserveRatio(true);
+            // Crosshairs are only placed on views that have an image
+            updateAllCrosshairs();
         }
-        
-        return coronalImage;
     }
 
-    private BufferedImage generateSagittalSlice(int columnIndex) {
-        if (volumeData == null) return null;
-        
-        BufferedImage sagittalImage = new BufferedImage(volumeHeight, volumeDepth, BufferedImage.TYPE_BYTE_GRAY);
+    private int currentIndex(Plane plane) {
+        switch (plane) {
+            case AXIAL: return currentAxialSlice;
+            case CORONAL: return currentCoronalSlice;
+            default: return currentSagittalSlice;
+        }
+    }
+
+    private ImageView viewFor(Plane plane) {
+        switch (plane) {
+            case AXIAL: return axialView;
+            case CORONAL: return coronalView;
+            default: return sagittalView;
+        }
+    }
+
+    private void setupWindowLevelDrag(StackPane pane) {
+        // Filters run before the crosshair and measurement handlers, so a right-drag never moves those
+        pane.addEventFilter(MouseEvent.MOUSE_PRESSED, e -> {
+            if (e.getButton() != MouseButton.SECONDARY || volume == null) return;
+            windowDragStartX = e.getX();
+            windowDragStartY = e.getY();
+            windowDragStartCenter = windowLut.getCenter();
+            windowDragStartWidth = windowLut.getWidth();
+            e.consume();
+        });
+        pane.addEventFilter(MouseEvent.MOUSE_DRAGGED, e -> {
+            if (!e.isSecondaryButtonDown() || volume == null) return;
+            // Horizontal drag changes width, vertical drag changes center, scaled to the current window
+            double scale = Math.max(1.0, windowDragStartWidth / 256.0);
+            setWindow(windowDragStartCenter + (e.getY() - windowDragStartY) * scale,
+                    windowDragStartWidth + (e.getX() - windowDragStartX) * scale);
+            e.consume();
+        });
+        pane.addEventFilter(MouseEvent.MOUSE_RELEASED, e -> {
+            if (e.getButton() == MouseButton.SECONDARY) e.consume();
+        });
+    }
+
+    private void applyWindowPreset(String name) {
+        if (dicomSlices.isEmpty() || name == null) return;
         
-        // Use window center/width from the first slice
         DicomSlice refSlice = dicomSlices.get(0);
-        double wc = refSlice.windowCenter;
-        double ww = refSlice.windowWidth;
-        
-        for (int z = 0; z < volumeDepth; z++) {
-            for (int y = 0; y < volumeHeight; y++) {
-                if (z < volumeData.length && y < volumeData[z].length && columnIndex < volumeData[z][y].length) {
-                    short pixelValue = volumeData[z][y][columnIndex];
-                    // Windowing formula
-                    int grayValue = (int) (((pixelValue - (wc - 0.5)) / (ww - 1) + 0.5) * 255.0);
-                    grayValue = Math.max(0, Math.min(255, grayValue));
-                    int rgb = (grayValue << 16) | (grayValue << 8) | grayValue;
-                    sagittalImage.setRGB(y, volumeDepth - 1 - z, rgb);
-                }
+        VolumeStats.Window window = seriesWindow();
+        // The auto windows need every slice, so they wait for loading to finish
+        if ("Auto".equals(name) && volumeStats != null) {
+            window = volumeStats.autoWindow(refSlice.rescaleSlope, refSlice.rescaleIntercept);
+        } else if ("Auto (slice)".equals(name) && volumeStats != null) {
+            window = volumeStats.autoWindow(Plane.AXIAL, currentAxialSlice, refSlice.rescaleSlope, refSlice.rescaleIntercept);
+        }
+        for (WindowLut.Preset preset : WindowLut.Preset.values()) {
+            if (preset.label.equals(name)) {
+                window = new VolumeStats.Window(preset.center, preset.width);
             }
         }
+        setWindow(window.center, window.width);
+    }
+
+    private boolean hasSeriesWindow() {
+        DicomSlice refSlice = dicomSlices.get(0);
+        return !Double.isNaN(refSlice.windowCenter) && !Double.isNaN(refSlice.windowWidth);
+    }
+
+    /**
+     * The series' own window, or the volume's auto window when the files carry none. While still
+     * loading that falls back to the axial slice on screen, once it has been decoded.
+     */
+    private VolumeStats.Window seriesWindow() {
+        DicomSlice refSlice = dicomSlices.get(0);
+        if (hasSeriesWindow()) {
+            return new VolumeStats.Window(refSlice.windowCenter, refSlice.windowWidth);
+        }
+        if (volumeStats != null) {
+            return volumeStats.autoWindow(refSlice.rescaleSlope, refSlice.rescaleIntercept);
+        }
+        VolumeStats.Window window = loadingStats == null ? null
+                : loadingStats.sliceWindow(currentAxialSlice, refSlice.rescaleSlope, refSlice.rescaleIntercept);
+        return window != null ? window : new VolumeStats.Window(128, 256);
+    }
+
+    private void setWindow(double center, double width) {
+        WindowLut lut = windowLut.withWindow(center, width);
+        if (lut == windowLut) return;
         
-        return sagittalImage;
+        windowLut = lut;
+        prefetcher.cancelAll();
+        updateWindowDisplay();
+        // Re-map the planes already on screen; each is reformatted at most once per drag, off the FX thread
+        for (Plane plane : planeImages.keySet()) {
+            rewindowPlane(plane);
+        }
+    }
+
+    private void updateWindowDisplay() {
+        windowLabel.setText(String.format("W/L: %.0f/%.0f", windowLut.getWidth(), windowLut.getCenter()));
     }
 
     private void loadDicomVolume(Stage primaryStage) {
         DirectoryChooser directoryChooser = new DirectoryChooser();
         directoryChooser.setTitle("Select DICOM Folder");
         File selectedDirectory = directoryChooser.showDialog(primaryStage);
-        
-        if (selectedDirectory != null) {
-            try {
-                loadDicomSlicesFromDirectory(selectedDirectory);
-                if (!dicomSlices.isEmpty()) {
-                    buildVolumeData();
-                    setupSlidersForLoadedVolume();
-                    resetToCenter();
-                    
-                    // Show success message
-                    Alert alert = new Alert(Alert.AlertType.INFORMATION);
-                    alert.setTitle("DICOM Loading");
-                    alert.setHeaderText("Volume Loaded Successfully");
-                    alert.setContentText(String.format("Loaded %d slices\nVolume dimensions: %dx%dx%d", 
-                            dicomSlices.size(), volumeWidth, volumeHeight, volumeDepth));
-                    alert.showAndWait();
-                }
-            } catch (Exception e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setHeaderText("Failed to load DICOM volume");
-                alert.setContentText(e.getMessage());
-                alert.showAndWait();
-            }
-        }
-    }
+        if (selectedDirectory == null) return;
 
-    private void loadDicomSlicesFromDirectory(File directory) throws IOException {
-        dicomSlices.clear();
-        File[] files = directory.listFiles((dir, name) -> 
-                name.toLowerCase().endsWith(".dcm") || 
+        File[] files = selectedDirectory.listFiles((dir, name) ->
+                name.toLowerCase().endsWith(".dcm") ||
                 name.toLowerCase().endsWith(".dicom") ||
                 !name.contains("."));
-        
         if (files == null || files.length == 0) {
-            throw new IOException("No DICOM files found in the selected directory");
+            showLoadError("No DICOM files found in the selected directory");
+            return;
         }
-        
         Arrays.sort(files);
-        
-        for (File file : files) {
-            try {
-                DicomSlice slice = loadDicomSlice(file);
-                if (slice != null) {
-                    dicomSlices.add(slice);
-                }
-            } catch (Exception e) {
-                System.err.println("Failed to load DICOM file: " + file.getName() + " - " + e.getMessage());
-            }
+        startLoad(files);
+    }
+
+    private void showLoadError(String message) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText("Failed to load DICOM volume");
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+
+    // Progress of one streaming load; its callbacks come from the loader's threads
+    private final class LoadListener implements SeriesLoader.Listener {
+        final int generation;
+        // Written by decode threads, read on the FX thread after the hand-off below
+        boolean[] loaded;
+        volatile int decoded, total;
+
+        LoadListener(int generation) {
+            this.generation = generation;
         }
-        
-        if (dicomSlices.isEmpty()) {
-            throw new IOException("No valid DICOM slices could be loaded");
+
+        @Override
+        public void volumeAllocated(Series series, VolumeStats.Builder stats) {
+            loaded = new boolean[series.volume.getDepth()];
+            total = loaded.length;
+            Platform.runLater(() -> {
+                if (generation == loadGeneration) beginVolume(series, stats, this);
+            });
         }
-        
-        // Sort slices by position
-        dicomSlices.sort((a, b) -> Double.compare(a.sliceLocation, b.sliceLocation));
+
+        @Override
+        public void sliceDecoded(int z, int count, int total) {
+            loaded[z] = true;
+            decoded = Math.max(decoded, count);
+            if (loadProgressScheduled.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    loadProgressScheduled.set(false);
+                    if (generation == loadGeneration) updateLoadProgress();
+                });
+            }
+        }
+    }
+
+    /**
+     * Loads on a background thread. The views come up as soon as the headers are scanned and
+     * fill in as slices decode, centre slice first; a new load or Cancel stops this one.
+     */
+    private void startLoad(File[] files) {
+        seriesLoader.cancel();
+        int generation = ++loadGeneration;
+        clearVolume();
+        volumeFiles = files;
+        loading = true;
+        loadProgress.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        loadProgress.setVisible(true);
+        cancelLoadButton.setVisible(true);
+        loadStatus.setText("Scanning " + files.length + " files...");
+
+        LoadListener listener = new LoadListener(generation);
+        loadExecutor.execute(() -> {
+            try {
+                Series series = seriesLoader.load(files, listener);
+                Platform.runLater(() -> {
+                    if (generation == loadGeneration) completeVolume(series);
+                });
+            } catch (CancellationException e) {
+                Platform.runLater(() -> {
+                    if (generation == loadGeneration) endLoad("Loading cancelled");
+                });
+            } catch (IOException | RuntimeException e) {
+                Platform.runLater(() -> {
+                    if (generation != loadGeneration) return;
+                    endLoad("Loading failed");
+                    showLoadError(e.getMessage());
+                });
+            }
+        });
+    }
+
+    private void clearVolume() {
+        dicomSlices.clear();
+        volume = null;
+        geometry = null;
+        volumeStats = null;
+        loadingStats = null;
+        loadListener = null;
+        currentStudy = null;
+        planeRenderer = null;
+        coarsePlanes.clear();
+        renderService.setRenderer(null);
+        prefetcher.setRenderer(null);
+        volumeView.setVolume(null, 0, 0, 0, false, 1, 0);
+    }
+
+    private void endLoad(String status) {
+        loading = false;
+        loadingStats = null;
+        loadListener = null;
+        loadProgress.setVisible(false);
+        cancelLoadButton.setVisible(false);
+        loadStatus.setText(status);
+        loadStatus.setTooltip(null);
+    }
+
+    // Sets the views up on a volume whose slices may still be decoding
+    private void beginVolume(Series series, VolumeStats.Builder stats, LoadListener listener) {
+        dicomSlices.clear();
+        dicomSlices.addAll(series.slices);
+        volume = series.volume;
+        loadingStats = stats;
+        loadListener = listener;
         
         // Extract volume information from first slice
         DicomSlice firstSlice = dicomSlices.get(0);
-        volumeWidth = firstSlice.columns;
-        volumeHeight = firstSlice.rows;
-        volumeDepth = dicomSlices.size();
-        
-        // Set spatial information
-        volumeOrigin = firstSlice.imagePosition.clone();
-        System.arraycopy(firstSlice.imageOrientation, 0, rowDirection, 0, 3);
-        System.arraycopy(firstSlice.imageOrientation, 3, columnDirection, 0, 3);
-        
-        // Calculate normal direction (cross product of row and column directions)
-        normalDirection[0] = rowDirection[1] * columnDirection[2] - rowDirection[2] * columnDirection[1];
-        normalDirection[1] = rowDirection[2] * columnDirection[0] - rowDirection[0] * columnDirection[2];
-        normalDirection[2] = rowDirection[0] * columnDirection[1] - rowDirection[1] * columnDirection[0];
-        
-        pixelSpacing = firstSlice.pixelSpacing.clone();
-        sliceThickness = firstSlice.sliceThickness;
+        volumeWidth = volume.getWidth();
+        volumeHeight = volume.getHeight();
+        volumeDepth = volume.getDepth();
+        
+        // Set spatial information; the transforms are built once here
+        geometry = new VolumeGeometry(dicomSlices);
+        volumeOrigin = geometry.getOrigin();
+        rowDirection = geometry.getRowDirection();
+        columnDirection = geometry.getColumnDirection();
+        normalDirection = geometry.getNormal();
+        pixelSpacing = new double[] {geometry.getColumnSpacing(), geometry.getRowSpacing()};
+        sliceSpacing = geometry.getSliceSpacing();
+        
+        // Signed data pads with the most negative value, unsigned with zero; both window to black
+        obliqueSampler = new ObliqueSampler(volume, geometry, firstSlice.pixelRepresentation == 1,
+                firstSlice.pixelRepresentation == 1 ? Short.MIN_VALUE : 0);
+        // No bricked copy or prefetching until every slice is in; the render cache is bypassed meanwhile
+        planeRenderer = new PlaneRenderer(volume, null, obliqueSampler);
+        obliquePlanes.clear();
+        renderService.setRenderer(planeRenderer);
+        prefetcher.setRenderer(null);
+        renderCache.clear();
+        // Window from the first slice, in rescaled (modality) units
+        VolumeStats.Window window = seriesWindow();
+        provisionalWindow = !hasSeriesWindow();
+        windowLut = new WindowLut(window.center, window.width,
+                firstSlice.rescaleSlope, firstSlice.rescaleIntercept, firstSlice.pixelRepresentation == 1);
+        windowPresets.setValue("Default");
+        updateWindowDisplay();
+
+        axialShowsLoadedSlice = false;
+        lastPartialRefresh = System.nanoTime();
+        setupSlidersForLoadedVolume();
+        resetToCenter();
     }
 
-    private DicomSlice loadDicomSlice(File file) throws IOException {
-        DicomSlice slice = new DicomSlice();
-        
-        try (DicomInputStream dis = new DicomInputStream(file)) {
-            Attributes attributes = dis.readDataset(-1, -1);
-            
-            // Extract basic information
-            slice.rows = attributes.getInt(Tag.Rows, 0);
-            slice.columns = attributes.getInt(Tag.Columns, 0);
-            slice.instanceUID = attributes.getString(Tag.SOPInstanceUID, "");
-            
-            // Extract spatial information
-            double[] imagePosition = attributes.getDoubles(Tag.ImagePositionPatient);
-            if (imagePosition != null && imagePosition.length >= 3) {
-                slice.imagePosition = imagePosition;
-                slice.sliceLocation =(int) imagePosition[2]; // Z coordinate for sorting
-            }
-            
-            double[] imageOrientation = attributes.getDoubles(Tag.ImageOrientationPatient);
-            if (imageOrientation != null && imageOrientation.length >= 6) {
-                slice.imageOrientation = imageOrientation;
-            }
-            
-            double[] pixelSpacing = attributes.getDoubles(Tag.PixelSpacing);
-            if (pixelSpacing != null && pixelSpacing.length >= 2) {
-                slice.pixelSpacing = pixelSpacing;
-            }
-            
-            slice.sliceThickness = attributes.getDouble(Tag.SliceThickness, 1.0);
-            
-            // Extract window/level information
-            slice.windowCenter = attributes.getDouble(Tag.WindowCenter, 128);
-            slice.windowWidth = attributes.getDouble(Tag.WindowWidth, 256);
-            
-            // Load image data
-            ImageInputStream iis = ImageIO.createImageInputStream(file);
-            DicomImageReader reader = new DicomImageReader(new DicomImageReaderSpi());
-            reader.setInput(iis);
-            
-            BufferedImage img = reader.read(0);
-            slice.image = img;
-            slice.pixelData = new short[slice.rows][slice.columns];
-
-            // Extract pixel data from the raster (works for 8-bit and 16-bit images)
-            java.awt.image.Raster raster = img.getRaster();
-            for (int y = 0; y < slice.rows; y++) {
-                for (int x = 0; x < slice.columns; x++) {
-                    slice.pixelData[y][x] = (short) raster.getSample(x, y, 0);
-                }
+    // Coalesced to one call per pulse while slices decode
+    private void updateLoadProgress() {
+        LoadListener listener = loadListener;
+        if (listener == null || volume == null) return;
+        loadProgress.setProgress(listener.decoded / (double) listener.total);
+        loadStatus.setText(String.format("Loading %d/%d", listener.decoded, listener.total));
+
+        // A series without window tags takes the window of the first slice to arrive
+        if (provisionalWindow && loadingStats.sliceWindow(currentAxialSlice, 1, 0) != null) {
+            provisionalWindow = false;
+            if ("Default".equals(windowPresets.getValue())) {
+                VolumeStats.Window window = seriesWindow();
+                setWindow(window.center, window.width);
             }
-            
-            reader.dispose();
-            iis.close();
         }
-        
-        return slice;
+        if (!axialShowsLoadedSlice && listener.loaded[currentAxialSlice]) {
+            renderScheduler.requestPlane(Plane.AXIAL);
+        }
+        // Coronal and sagittal change with every slice; redraw their partly filled rows a few times a second
+        long now = System.nanoTime();
+        if (now - lastPartialRefresh > PARTIAL_REFRESH_NANOS) {
+            lastPartialRefresh = now;
+            renderScheduler.requestPlane(Plane.CORONAL);
+            renderScheduler.requestPlane(Plane.SAGITTAL);
+        }
     }
 
-    private void buildVolumeData() {
-        if (dicomSlices.isEmpty()) return;
-        
-        volumeData = new short[volumeDepth][volumeHeight][volumeWidth];
+    // Every slice is in: switch to the bricked copy, cache, prefetcher, statistics and 3D view
+    private void completeVolume(Series series) {
+        if (series.volume == null || series.slices.isEmpty()) {
+            clearVolume();
+            endLoad("Loading failed");
+            showLoadError("No valid DICOM slices could be loaded");
+            return;
+        }
+        // A cache hit skips the streaming stage; slices that failed to decode compact the volume
+        volumeStats = series.stats;
+        if (series.volume != volume) {
+            beginVolume(series, null, null);
+        }
+        DicomSlice firstSlice = dicomSlices.get(0);
+        currentStudy = session.open(volumeFiles, series);
+        refreshStudyChooser();
+
+        BrickedVolume bricks = brickSize > 0 ? new BrickedVolume(volume, brickSize) : null;
+        planeRenderer = new PlaneRenderer(volume, bricks, obliqueSampler);
+        renderService.setRenderer(planeRenderer);
+        prefetcher.setRenderer(planeRenderer);
+        renderCache.clear();
+        buildPyramid(currentStudy, volume, bricks, firstSlice.pixelRepresentation == 1);
+        volumeView.setVolume(volume, pixelSpacing[0], pixelSpacing[1], Math.abs(sliceSpacing),
+                firstSlice.pixelRepresentation == 1, firstSlice.rescaleSlope, firstSlice.rescaleIntercept);
+        SeriesLoader.Stats loadStats = seriesLoader.getLastStats();
+        endLoad(String.format("Loaded %d slices, %dx%dx%d in %.0f ms", dicomSlices.size(), volumeWidth, volumeHeight,
+                volumeDepth, loadStats.totalNanos / 1e6));
+        // Per-stage timings and throughput on hover
+        loadStatus.setTooltip(new Tooltip(loadStats.toString()));
+
+        if (!hasSeriesWindow() && "Default".equals(windowPresets.getValue())) {
+            VolumeStats.Window window = seriesWindow();
+            setWindow(window.center, window.width);
+        }
+        for (Plane plane : Plane.values()) {
+            renderScheduler.requestPlane(plane);
+        }
+    }
+
+    // Dragging only needs the pyramid to be fast, so views come up on the full volume and switch over once it is built.
+    // The session keeps the pyramids of resident studies, so switching back to one reuses it.
+    private void buildPyramid(StudySession.Study study, Volume source, BrickedVolume bricks, boolean signed) {
+        ObliqueSampler sampler = obliqueSampler;
+        VolumePyramid kept = session.getPyramid(study);
+        if (kept != null) {
+            usePyramid(source, bricks, sampler, kept);
+            return;
+        }
+        pyramidExecutor.execute(() -> {
+            VolumePyramid pyramid = new VolumePyramid(source, signed);
+            session.setPyramid(study, pyramid);
+            Platform.runLater(() -> {
+                usePyramid(source, bricks, sampler, pyramid);
+                refreshStudyChooser();
+            });
+        });
+    }
+
+    private void usePyramid(Volume source, BrickedVolume bricks, ObliqueSampler sampler, VolumePyramid pyramid) {
+        if (volume != source) return;
+        planeRenderer = new PlaneRenderer(source, bricks, sampler, pyramid);
+        renderService.setRenderer(planeRenderer);
+        prefetcher.setRenderer(planeRenderer);
+        // Switching renderers drops frames in flight
+        for (Plane plane : Plane.values()) {
+            renderScheduler.requestPlane(plane);
+        }
+    }
+
+    // Switches to an open study: resident ones straight away, spilled ones through the volume cache
+    private void showStudy(StudySession.Study study) {
+        if (study == currentStudy) return;
+        Series series = session.view(study);
+        if (series == null) {
+            startLoad(study.getFiles());
+            return;
+        }
+        if (loading) {
+            // Supersedes the load in progress like a new load would
+            seriesLoader.cancel();
+            loadGeneration++;
+        }
+        volumeFiles = study.getFiles();
+        completeVolume(series);
+    }
+
+    private void closeStudy() {
+        if (currentStudy == null) return;
+        session.close(currentStudy);
+        currentStudy = null;
+        List<StudySession.Study> open = session.getStudies();
+        if (!open.isEmpty()) {
+            showStudy(open.get(0));
+            return;
+        }
+        clearVolume();
+        for (Plane plane : Plane.values()) {
+            viewFor(plane).setImage(null);
+        }
+        planeImages.clear();
+        loadStatus.setText("");
+        refreshStudyChooser();
+    }
+
+    // Labels carry each study's resident size, so they are rebuilt whenever residency changes
+    private void refreshStudyChooser() {
+        isUpdatingStudies = true;
+        openStudies = session.getStudies();
+        List<String> labels = new ArrayList<>();
+        for (StudySession.Study study : openStudies) {
+            labels.add(session.describe(study));
+        }
+        studyChooser.getItems().setAll(labels);
+        int index = openStudies.indexOf(currentStudy);
+        if (index >= 0) studyChooser.getSelectionModel().select(index);
+        closeStudyButton.setDisable(currentStudy == null);
+        isUpdatingStudies = false;
+    }
+
+    private void updateObliqueMode() {
+        boolean oblique = obliqueMode.isSelected();
+        if (oblique && volume != null) {
+            initObliquePlanes();
+        }
+        // Slice sliders step orthogonal planes only
+        axialSlider.setDisable(oblique);
+        coronalSlider.setDisable(oblique);
+        sagittalSlider.setDisable(oblique);
+        for (Plane plane : Plane.values()) {
+            renderScheduler.requestPlane(plane);
+        }
+        updateAllCrosshairs();
+    }
+
+    // Starts from the orthogonal planes through the crosshair, resampled to square pixels
+    private void initObliquePlanes() {
+        double spacing = Math.min(pixelSpacing[0], pixelSpacing[1]);
+        double extentX = volumeWidth * pixelSpacing[0];
+        double extentY = volumeHeight * pixelSpacing[1];
+        double extentZ = volumeDepth * Math.abs(sliceSpacing);
+        double[] center = new double[3];
+        // Increasing slice index; the orthogonal views put the first slice at the bottom
+        double[] down = new double[3];
+        for (int i = 0; i < 3; i++) {
+            center[i] = volumeOrigin[i]
+                    + rowDirection[i] * (volumeWidth - 1) / 2.0 * pixelSpacing[0]
+                    + columnDirection[i] * (volumeHeight - 1) / 2.0 * pixelSpacing[1]
+                    + normalDirection[i] * (volumeDepth - 1) / 2.0 * sliceSpacing;
+            down[i] = -normalDirection[i] * Math.signum(sliceSpacing);
+        }
+        int width = (int) Math.round(extentX / spacing);
+        int height = (int) Math.round(extentY / spacing);
+        int depth = (int) Math.round(extentZ / spacing);
+        obliquePlanes.put(Plane.AXIAL,
+                new ObliquePlane(center, rowDirection, columnDirection, width, height, spacing).through(crosshairPatientPos));
+        obliquePlanes.put(Plane.CORONAL,
+                new ObliquePlane(center, rowDirection, down, width, depth, spacing).through(crosshairPatientPos));
+        obliquePlanes.put(Plane.SAGITTAL,
+                new ObliquePlane(center, columnDirection, down, height, depth, spacing).through(crosshairPatientPos));
+    }
+
+    private void handleObliqueCrosshairMove(Plane view, double x, double y, String dragType, double angle) {
+        ObliquePlane viewPlane = obliquePlanes.get(view);
+        if (viewPlane == null) return;
         
-        for (int z = 0; z < volumeDepth && z < dicomSlices.size(); z++) {
-            DicomSlice slice = dicomSlices.get(z);
-            if (slice.pixelData != null) {
-                for (int y = 0; y < volumeHeight && y < slice.pixelData.length; y++) {
-                    for (int x = 0; x < volumeWidth && x < slice.pixelData[y].length; x++) {
-                        volumeData[z][y][x] = slice.pixelData[y][x];
-                    }
+        double[] pixel = viewToObliquePixel(viewPlane, x, y);
+        double[] point = viewPlane.pointAt(pixel[0], pixel[1]);
+        switch (dragType) {
+            case "center":
+                crosshairPatientPos = point;
+                for (Plane plane : Plane.values()) {
+                    if (plane == view) continue;
+                    obliquePlanes.put(plane, obliquePlanes.get(plane).through(point));
+                    renderScheduler.requestPlane(plane);
                 }
-            }
+                break;
+            case "axisX":
+            case "axisY":
+                // Slide the plane under that line through the mouse; the crosshair moves along its normal
+                Plane moved = "axisX".equals(dragType) ? axisXPlane(view) : axisYPlane(view);
+                ObliquePlane plane = obliquePlanes.get(moved).through(point);
+                double[] normal = plane.getNormal();
+                double offset = 0;
+                for (int i = 0; i < 3; i++) offset += (point[i] - crosshairPatientPos[i]) * normal[i];
+                for (int i = 0; i < 3; i++) crosshairPatientPos[i] += offset * normal[i];
+                obliquePlanes.put(moved, plane);
+                renderScheduler.requestPlane(moved);
+                break;
+            case "rotate":
+                // The other two planes turn about this view's normal through the crosshair
+                double[] axis = viewPlane.getNormal();
+                for (Plane other : Plane.values()) {
+                    if (other == view) continue;
+                    obliquePlanes.put(other, obliquePlanes.get(other).rotated(crosshairPatientPos, axis, angle));
+                    renderScheduler.requestPlane(other);
+                }
+                break;
+        }
+        updateAllCrosshairs();
+    }
+
+    private void drawObliqueCrosshairs() {
+        if (obliquePlanes.isEmpty()) return;
+        for (Plane view : Plane.values()) {
+            ObliquePlane plane = obliquePlanes.get(view);
+            double[] pixel = plane.toPixel(crosshairPatientPos);
+            double[] position = obliquePixelToView(plane, pixel[0], pixel[1]);
+            crosshairFor(view).updatePosition(position[0], position[1],
+                    plane.intersectionAngle(obliquePlanes.get(axisXPlane(view))),
+                    plane.intersectionAngle(obliquePlanes.get(axisYPlane(view))));
+        }
+    }
+
+    // The image is fitted into the VIEW_SIZE square with its aspect ratio kept, and centered
+    private double[] viewToObliquePixel(ObliquePlane plane, double x, double y) {
+        double scale = VIEW_SIZE / Math.max(plane.getWidth(), plane.getHeight());
+        return new double[] {
+                (x - (VIEW_SIZE - plane.getWidth() * scale) / 2) / scale,
+                (y - (VIEW_SIZE - plane.getHeight() * scale) / 2) / scale
+        };
+    }
+
+    private double[] obliquePixelToView(ObliquePlane plane, double px, double py) {
+        double scale = VIEW_SIZE / Math.max(plane.getWidth(), plane.getHeight());
+        return new double[] {
+                px * scale + (VIEW_SIZE - plane.getWidth() * scale) / 2,
+                py * scale + (VIEW_SIZE - plane.getHeight() * scale) / 2
+        };
+    }
+
+    // Plane drawn as the horizontal (axisX) and vertical (axisY) crosshair line of each view
+    private static Plane axisXPlane(Plane view) {
+        return view == Plane.AXIAL ? Plane.CORONAL : Plane.AXIAL;
+    }
+
+    private static Plane axisYPlane(Plane view) {
+        return view == Plane.SAGITTAL ? Plane.CORONAL : Plane.SAGITTAL;
+    }
+
+    private static Plane planeForView(String viewType) {
+        return Plane.valueOf(viewType.toUpperCase());
+    }
+
+    private CrosshairOverlay crosshairFor(Plane view) {
+        switch (view) {
+            case AXIAL: return axialCrosshair;
+            case CORONAL: return coronalCrosshair;
+            default: return sagittalCrosshair;
         }
     }
 
@@ -1224,7 +1705,7 @@ public class ViewerUI extends Application {
         if (dicomSlices.isEmpty()) return 0.0;
         DicomSlice slice = dicomSlices.get(0);
         double dx = (x2 - x1) * slice.pixelSpacing[0] * volumeWidth / VIEW_SIZE;
-        double dz = (y2 - y1) * sliceThickness * volumeDepth / VIEW_SIZE;
+        double dz = (y2 - y1) * Math.abs(sliceSpacing) * volumeDepth / VIEW_SIZE;
         return Math.sqrt(dx * dx + dz * dz);
     }
 
@@ -1232,7 +1713,7 @@ public class ViewerUI extends Application {
         if (dicomSlices.isEmpty()) return 0.0;
         DicomSlice slice = dicomSlices.get(0);
         double dy = (x2 - x1) * slice.pixelSpacing[1] * volumeHeight / VIEW_SIZE;
-        double dz = (y2 - y1) * sliceThickness * volumeDepth / VIEW_SIZE;
+        double dz = (y2 - y1) * Math.abs(sliceSpacing) * volumeDepth / VIEW_SIZE;
         return Math.sqrt(dy * dy + dz * dz);
     }
 
@@ -0,0 +1,74 @@
+package com.dicom.viewer;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Voxels of a series in one contiguous buffer, x fastest then y then z.
+ * Slice z of the volume is the z-th slice of the series in spatial order.
+ */
+public class Volume {
+    private final int width, height, depth;
+    private final int rowStride, sliceStride;
+    private final ShortBuffer voxels;
+    // Bumped by writers while a volume is still filling in, so copies derived from it can be refreshed
+    private final AtomicInteger modCount = new AtomicInteger();
+
+    public Volume(int width, int height, int depth) {
+        this(width, height, depth, ShortBuffer.allocate(checkedSize(width, height, depth)));
+    }
+
+    public Volume(int width, int height, int depth, ShortBuffer voxels) {
+        if (voxels.capacity() < checkedSize(width, height, depth)) {
+            throw new IllegalArgumentException("Voxel buffer too small for " + width + "x" + height + "x" + depth);
+        }
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.rowStride = width;
+        this.sliceStride = width * height;
+        this.voxels = voxels;
+    }
+
+    public static boolean fits(int width, int height, long depth) {
+        return (long) width * height * depth <= Integer.MAX_VALUE - 8;
+    }
+
+    private static int checkedSize(int width, int height, int depth) {
+        if (width <= 0 || height <= 0 || depth <= 0 || !fits(width, height, depth)) {
+            throw new IllegalArgumentException("Unsupported volume size " + width + "x" + height + "x" + depth);
+        }
+        return width * height * depth;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getDepth() { return depth; }
+    public int getRowStride() { return rowStride; }
+    public int getSliceStride() { return sliceStride; }
+
+    // Backing storage; callers use absolute get/put so the buffer position never matters
+    public ShortBuffer getVoxels() { return voxels; }
+
+    public int index(int x, int y, int z) {
+        return z * sliceStride + y * rowStride + x;
+    }
+
+    public short get(int x, int y, int z) {
+        return voxels.get(index(x, y, z));
+    }
+
+    public void set(int x, int y, int z, short value) {
+        voxels.put(index(x, y, z), value);
+    }
+
+    public int getModCount() { return modCount.get(); }
+
+    public void markModified() {
+        modCount.incrementAndGet();
+    }
+
+    public long sizeInBytes() {
+        return (long) sliceStride * depth * Short.BYTES;
+    }
+}
@@ -0,0 +1,332 @@
+package com.dicom.viewer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of decoded volumes. One file per series, keyed by the file list with sizes and
+ * modification times, holding the slice geometry followed by the raw voxels. Hits are memory
+ * mapped, so reformatting can start before the whole file has been paged in. The intensity
+ * statistics gathered while decoding are stored with the geometry, so a hit has them too.
+ */
+public class VolumeCache {
+
+    private static final int MAGIC = 0x44564F4C; // "DVOL"
+    private static final int VERSION = 4;
+    private static final String SUFFIX = ".vol";
+    // Voxels start on a page boundary so the mapping lines up with the page cache
+    private static final int DATA_ALIGNMENT = 4096;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "volume-cache-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public VolumeCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // Cache under ~/.dicom-viewer/cache unless overridden by -Ddicom.viewer.cacheDir / -Ddicom.viewer.cacheMaxBytes
+    public static VolumeCache createDefault() {
+        String dir = System.getProperty("dicom.viewer.cacheDir",
+                Paths.get(System.getProperty("user.home"), ".dicom-viewer", "cache").toString());
+        long maxBytes = Long.getLong("dicom.viewer.cacheMaxBytes", 4L << 30);
+        return new VolumeCache(Paths.get(dir), maxBytes);
+    }
+
+    public Series get(File[] files) {
+        Path path = pathFor(files);
+        if (!Files.isRegularFile(path)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Files.deleteIfExists(path);
+                return null;
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            int depth = in.readInt();
+            long dataOffset = in.readLong();
+
+            List<DicomSlice> slices = new ArrayList<>(depth);
+            for (int z = 0; z < depth; z++) {
+                slices.add(readSlice(in));
+            }
+            VolumeStats stats = readStats(in, depth);
+
+            long dataBytes = (long) width * height * depth * Short.BYTES;
+            ShortBuffer voxels;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() < dataOffset + dataBytes) {
+                    throw new IOException("Truncated cache file " + path.getFileName());
+                }
+                voxels = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, dataBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            }
+
+            // Touch the entry so eviction sees it as recently used
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Series(slices, new Volume(width, height, depth, voxels), stats);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Discarding unreadable volume cache " + path.getFileName() + " - " + e.getMessage());
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // Another attempt is made on the next write
+            }
+            return null;
+        }
+    }
+
+    public boolean contains(File[] files) {
+        return Files.isRegularFile(pathFor(files));
+    }
+
+    // Volumes too large to map in one piece, or for the whole cache, are never stored
+    public boolean accepts(Series series) {
+        Volume volume = series.volume;
+        return volume != null && volume.sizeInBytes() <= Integer.MAX_VALUE && volume.sizeInBytes() <= maxBytes;
+    }
+
+    // Writes the series in the background; a half-written entry is never visible under its final name
+    public void put(File[] files, Series series) {
+        if (!accepts(series)) return;
+        writer.execute(() -> {
+            try {
+                store(files, series);
+            } catch (IOException e) {
+                System.err.println("Failed to write volume cache - " + e.getMessage());
+            }
+        });
+    }
+
+    // Writes the series on the calling thread, for callers that must know it is on disk; false if not accepted.
+    // Synchronized so the background writer and a caller never evict under each other.
+    public synchronized boolean store(File[] files, Series series) throws IOException {
+        if (!accepts(series)) return false;
+        Path path = pathFor(files);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, "volume", ".tmp");
+            write(temp, series);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+            evict();
+            return true;
+        } finally {
+            try {
+                if (temp != null) Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Left for the next eviction pass
+            }
+        }
+    }
+
+    private void write(Path path, Series series) throws IOException {
+        Volume volume = series.volume;
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        for (DicomSlice slice : series.slices) {
+            writeSlice(header, slice);
+        }
+        writeStats(header, series.stats);
+        header.flush();
+        // magic, version, width, height, depth, data offset
+        long fixedSize = 4 * 5 + 8;
+        long dataOffset = alignUp(fixedSize + headerBytes.size(), DATA_ALIGNMENT);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(volume.getWidth());
+            out.writeInt(volume.getHeight());
+            out.writeInt(volume.getDepth());
+            out.writeLong(dataOffset);
+            headerBytes.writeTo(out);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ShortBuffer voxels = volume.getVoxels();
+            int sliceSize = volume.getSliceStride();
+            ByteBuffer chunk = ByteBuffer.allocateDirect(sliceSize * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long position = dataOffset;
+            for (int z = 0; z < volume.getDepth(); z++) {
+                chunk.clear();
+                chunk.asShortBuffer().put(0, voxels, z * sliceSize, sliceSize);
+                while (chunk.hasRemaining()) {
+                    position += channel.write(chunk, position);
+                }
+            }
+        }
+    }
+
+    private static void writeSlice(DataOutputStream out, DicomSlice slice) throws IOException {
+        // Fixed counts: tags may carry extra values, readSlice expects exactly these
+        for (int i = 0; i < 3; i++) out.writeDouble(slice.imagePosition[i]);
+        for (int i = 0; i < 6; i++) out.writeDouble(slice.imageOrientation[i]);
+        for (int i = 0; i < 2; i++) out.writeDouble(slice.pixelSpacing[i]);
+        out.writeDouble(slice.sliceThickness);
+        out.writeDouble(slice.windowCenter);
+        out.writeDouble(slice.windowWidth);
+        out.writeDouble(slice.rescaleSlope);
+        out.writeDouble(slice.rescaleIntercept);
+        out.writeInt(slice.pixelRepresentation);
+        out.writeInt(slice.rows);
+        out.writeInt(slice.columns);
+        out.writeUTF(slice.instanceUID != null ? slice.instanceUID : "");
+    }
+
+    private static DicomSlice readSlice(DataInputStream in) throws IOException {
+        DicomSlice slice = new DicomSlice();
+        for (int i = 0; i < 3; i++) slice.imagePosition[i] = in.readDouble();
+        for (int i = 0; i < 6; i++) slice.imageOrientation[i] = in.readDouble();
+        for (int i = 0; i < 2; i++) slice.pixelSpacing[i] = in.readDouble();
+        slice.sliceThickness = in.readDouble();
+        slice.windowCenter = in.readDouble();
+        slice.windowWidth = in.readDouble();
+        slice.rescaleSlope = in.readDouble();
+        slice.rescaleIntercept = in.readDouble();
+        slice.pixelRepresentation = in.readInt();
+        slice.rows = in.readInt();
+        slice.columns = in.readInt();
+        slice.instanceUID = in.readUTF();
+        return slice;
+    }
+
+    // Histograms are sparse (a CT slice fills a few dozen of the bins), so only non-empty bins are written
+    private static void writeStats(DataOutputStream out, VolumeStats stats) throws IOException {
+        out.writeBoolean(stats.isSigned());
+        for (int z = 0; z < stats.getDepth(); z++) {
+            out.writeInt(stats.getSliceMin(z));
+            out.writeInt(stats.getSliceMax(z));
+            int[] histogram = stats.getSliceHistogram(z);
+            int used = 0;
+            for (int count : histogram) {
+                if (count != 0) used++;
+            }
+            out.writeShort(used);
+            for (int b = 0; b < histogram.length; b++) {
+                if (histogram[b] == 0) continue;
+                out.writeShort(b);
+                out.writeInt(histogram[b]);
+            }
+        }
+        for (Plane plane : Plane.values()) {
+            float[] windows = stats.getWindows(plane);
+            out.writeInt(windows.length);
+            for (float w : windows) out.writeFloat(w);
+        }
+    }
+
+    private static VolumeStats readStats(DataInputStream in, int depth) throws IOException {
+        boolean signed = in.readBoolean();
+        int[][] histograms = new int[depth][VolumeStats.BINS];
+        int[] mins = new int[depth], maxs = new int[depth];
+        for (int z = 0; z < depth; z++) {
+            mins[z] = in.readInt();
+            maxs[z] = in.readInt();
+            int used = in.readUnsignedShort();
+            for (int i = 0; i < used; i++) {
+                int bin = in.readUnsignedShort();
+                histograms[z][bin] = in.readInt();
+            }
+        }
+        Map<Plane, float[]> windows = new EnumMap<>(Plane.class);
+        for (Plane plane : Plane.values()) {
+            float[] w = new float[in.readInt()];
+            for (int i = 0; i < w.length; i++) w[i] = in.readFloat();
+            windows.put(plane, w);
+        }
+        return new VolumeStats(signed, histograms, mins, maxs, windows);
+    }
+
+    // Drops least recently used entries until the cache fits its budget
+    private void evict() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> list = Files.list(directory)) {
+            entries = list.filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(VolumeCache::lastModified))
+                    .collect(Collectors.toList());
+        }
+        long total = 0;
+        for (Path entry : entries) total += Files.size(entry);
+        for (Path entry : entries) {
+            if (total <= maxBytes) break;
+            long size = Files.size(entry);
+            Files.deleteIfExists(entry);
+            total -= size;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private Path pathFor(File[] files) {
+        return directory.resolve(key(files) + SUFFIX);
+    }
+
+    // Identifies a series by its files, their sizes and modification times
+    static String key(File[] files) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (File file : files) {
+                digest.update(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+                digest.update(longBytes(file.length()));
+                digest.update(longBytes(file.lastModified()));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] longBytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    private static long alignUp(long value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+}
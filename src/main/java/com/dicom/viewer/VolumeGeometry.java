@@ -0,0 +1,172 @@
+package com.dicom.viewer;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Where the voxels of a series sit in patient space, built once per load. Voxel coordinates are
+ * (column, row, slice index), slice 0 being the first slice in spatial order, and two 4x4 affine
+ * matrices map them to patient millimetres and back. Slices are ordered by their position along
+ * the slice normal rather than by a truncated z, so sub-millimetre spacing and tilted or
+ * non-axial stacks sort correctly, and the slice nearest a point is found by binary search over
+ * those positions. The transform methods write into caller arrays and allocate nothing.
+ * Immutable.
+ */
+public class VolumeGeometry {
+
+    private final double[] origin, rowDirection, columnDirection, normal;
+    private final double columnSpacing, rowSpacing;
+    // Signed distance between consecutive slices along normal
+    private final double sliceSpacing;
+    // Row-major 4x4 affine matrices; the bottom row is always 0 0 0 1
+    private final double[] voxelToPatient = new double[16];
+    private final double[] patientToVoxel = new double[16];
+    // Each slice's position along the sort axis, ascending
+    private final double[] slicePositions;
+    private final double[] sortAxis;
+
+    // slices must already be in the order sortSlices gives them
+    public VolumeGeometry(List<DicomSlice> slices) {
+        DicomSlice first = slices.get(0);
+        double[][] axes = axes(first);
+        rowDirection = axes[0];
+        columnDirection = axes[1];
+        normal = axes[2];
+        sortAxis = sortAxis(normal);
+        origin = first.imagePosition.clone();
+        columnSpacing = first.pixelSpacing[0] > 0 ? first.pixelSpacing[0] : 1.0;
+        rowSpacing = first.pixelSpacing[1] > 0 ? first.pixelSpacing[1] : 1.0;
+
+        slicePositions = new double[slices.size()];
+        for (int z = 0; z < slices.size(); z++) {
+            slicePositions[z] = dot(slices.get(z).imagePosition, sortAxis);
+        }
+        sliceSpacing = sliceSpacing(slices, normal, first.sliceThickness);
+
+        for (int i = 0; i < 3; i++) {
+            voxelToPatient[4 * i] = rowDirection[i] * columnSpacing;
+            voxelToPatient[4 * i + 1] = columnDirection[i] * rowSpacing;
+            voxelToPatient[4 * i + 2] = normal[i] * sliceSpacing;
+            voxelToPatient[4 * i + 3] = origin[i];
+        }
+        voxelToPatient[15] = 1;
+        invertAffine(voxelToPatient, patientToVoxel);
+    }
+
+    /**
+     * Sorts slices into spatial order: by position along the normal of the first slice, taken
+     * to point towards the head for axial stacks so they keep ascending z. Stable, so file order
+     * breaks ties.
+     */
+    public static void sortSlices(List<DicomSlice> slices) {
+        if (slices.isEmpty()) return;
+        double[] axis = sortAxis(axes(slices.get(0))[2]);
+        slices.sort(Comparator.comparingDouble(slice -> dot(slice.imagePosition, axis)));
+    }
+
+    public int getDepth() {
+        return slicePositions.length;
+    }
+
+    // Copies, so callers holding them cannot change the geometry
+    public double[] getOrigin() { return origin.clone(); }
+    public double[] getRowDirection() { return rowDirection.clone(); }
+    public double[] getColumnDirection() { return columnDirection.clone(); }
+    public double[] getNormal() { return normal.clone(); }
+    public double getColumnSpacing() { return columnSpacing; }
+    public double getRowSpacing() { return rowSpacing; }
+    public double getSliceSpacing() { return sliceSpacing; }
+
+    // Patient position of voxel (x, y, z) into out[0..2]; fractional coordinates are fine
+    public void voxelToPatient(double x, double y, double z, double[] out) {
+        double[] m = voxelToPatient;
+        out[0] = m[0] * x + m[1] * y + m[2] * z + m[3];
+        out[1] = m[4] * x + m[5] * y + m[6] * z + m[7];
+        out[2] = m[8] * x + m[9] * y + m[10] * z + m[11];
+    }
+
+    // Fractional voxel coordinates (column, row, slice) of a patient position into out[0..2]; out may be patient
+    public void patientToVoxel(double[] patient, double[] out) {
+        double[] m = patientToVoxel;
+        double px = patient[0], py = patient[1], pz = patient[2];
+        out[0] = m[0] * px + m[1] * py + m[2] * pz + m[3];
+        out[1] = m[4] * px + m[5] * py + m[6] * pz + m[7];
+        out[2] = m[8] * px + m[9] * py + m[10] * pz + m[11];
+    }
+
+    // Index of the slice whose position along the normal is nearest the point's
+    public int nearestSlice(double[] patient) {
+        double position = dot(patient, sortAxis);
+        int low = 0, high = slicePositions.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (slicePositions[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        // low is the first slice at or past the point; the one before it may be nearer
+        if (low > 0 && position - slicePositions[low - 1] <= slicePositions[low] - position) return low - 1;
+        return low;
+    }
+
+    // Row, column and normal directions of a slice; identity axes when the orientation is missing or degenerate
+    private static double[][] axes(DicomSlice slice) {
+        double[] row = {slice.imageOrientation[0], slice.imageOrientation[1], slice.imageOrientation[2]};
+        double[] column = {slice.imageOrientation[3], slice.imageOrientation[4], slice.imageOrientation[5]};
+        double[] normal = {
+                row[1] * column[2] - row[2] * column[1],
+                row[2] * column[0] - row[0] * column[2],
+                row[0] * column[1] - row[1] * column[0]};
+        if (dot(normal, normal) < 1e-12) {
+            return new double[][] {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+        }
+        return new double[][] {row, column, normal};
+    }
+
+    // The normal, flipped to point towards the head when it has a z component
+    private static double[] sortAxis(double[] normal) {
+        if (normal[2] >= 0) return normal.clone();
+        return new double[] {-normal[0], -normal[1], -normal[2]};
+    }
+
+    // Average step between first and last slice along the normal; the slice thickness for single slices
+    private static double sliceSpacing(List<DicomSlice> slices, double[] normal, double thickness) {
+        double fallback = thickness > 0 ? thickness : 1.0;
+        if (slices.size() < 2) return fallback;
+        double[] first = slices.get(0).imagePosition;
+        double[] last = slices.get(slices.size() - 1).imagePosition;
+        double distance = 0;
+        for (int i = 0; i < 3; i++) {
+            distance += (last[i] - first[i]) * normal[i];
+        }
+        double spacing = distance / (slices.size() - 1);
+        return Math.abs(spacing) < 1e-6 ? fallback : spacing;
+    }
+
+    // Inverse of a row-major affine 4x4: the inverse of its 3x3 part and the translation taken back through it
+    private static void invertAffine(double[] m, double[] out) {
+        double a = m[0], b = m[1], c = m[2];
+        double d = m[4], e = m[5], f = m[6];
+        double g = m[8], h = m[9], k = m[10];
+        double c00 = e * k - f * h, c01 = c * h - b * k, c02 = b * f - c * e;
+        double c10 = f * g - d * k, c11 = a * k - c * g, c12 = c * d - a * f;
+        double c20 = d * h - e * g, c21 = b * g - a * h, c22 = a * e - b * d;
+        double det = a * c00 + b * c10 + c * c20;
+        if (Math.abs(det) < 1e-12) throw new IllegalArgumentException("Degenerate slice geometry");
+        double s = 1 / det;
+        double[] inverse = {c00 * s, c01 * s, c02 * s, c10 * s, c11 * s, c12 * s, c20 * s, c21 * s, c22 * s};
+        for (int r = 0; r < 3; r++) {
+            out[4 * r] = inverse[3 * r];
+            out[4 * r + 1] = inverse[3 * r + 1];
+            out[4 * r + 2] = inverse[3 * r + 2];
+            out[4 * r + 3] = -(inverse[3 * r] * m[3] + inverse[3 * r + 1] * m[7] + inverse[3 * r + 2] * m[11]);
+        }
+        out[15] = 1;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+}
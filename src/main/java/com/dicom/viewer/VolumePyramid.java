@@ -0,0 +1,90 @@
+package com.dicom.viewer;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Downsampled copies of a volume at 2x, 4x and 8x, each the average of 2x2x2 blocks of the level
+ * above it. Level 0 is the volume itself. A plane reformatted from level k touches 8^k times fewer
+ * voxels, so views can render coarse levels while the user is dragging and stay responsive
+ * whatever the acquisition size. Levels stop once the longest side would drop below MIN_SIZE.
+ */
+public class VolumePyramid {
+
+    public static final int MAX_LEVEL = 3;
+    private static final int MIN_SIZE = 64;
+
+    private final List<Volume> levels = new ArrayList<>();
+
+    public VolumePyramid(Volume volume, boolean signed) {
+        levels.add(volume);
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            Volume finer = levels.get(level - 1);
+            int width = (finer.getWidth() + 1) / 2, height = (finer.getHeight() + 1) / 2;
+            int depth = (finer.getDepth() + 1) / 2;
+            if (Math.max(width, Math.max(height, depth)) < MIN_SIZE) break;
+            levels.add(downsample(finer, width, height, depth, signed));
+        }
+    }
+
+    private static Volume downsample(Volume finer, int width, int height, int depth, boolean signed) {
+        Volume coarse = new Volume(width, height, depth);
+        // One output slice per task, each writing only its own slice
+        IntStream.range(0, depth).parallel().forEach(z -> downsampleSlice(finer, coarse, z, signed));
+        return coarse;
+    }
+
+    private static void downsampleSlice(Volume finer, Volume coarse, int z, boolean signed) {
+        ShortBuffer in = finer.getVoxels(), out = coarse.getVoxels();
+        int mask = signed ? -1 : 0xFFFF;
+        // Odd sizes: the last block along an axis has only one voxel on that axis
+        int z0 = 2 * z, z1 = Math.min(z0 + 1, finer.getDepth() - 1);
+        for (int y = 0; y < coarse.getHeight(); y++) {
+            int y0 = 2 * y, y1 = Math.min(y0 + 1, finer.getHeight() - 1);
+            int base = coarse.index(0, y, z);
+            for (int x = 0; x < coarse.getWidth(); x++) {
+                int x0 = 2 * x, x1 = Math.min(x0 + 1, finer.getWidth() - 1);
+                int sum = (in.get(finer.index(x0, y0, z0)) & mask) + (in.get(finer.index(x1, y0, z0)) & mask)
+                        + (in.get(finer.index(x0, y1, z0)) & mask) + (in.get(finer.index(x1, y1, z0)) & mask)
+                        + (in.get(finer.index(x0, y0, z1)) & mask) + (in.get(finer.index(x1, y0, z1)) & mask)
+                        + (in.get(finer.index(x0, y1, z1)) & mask) + (in.get(finer.index(x1, y1, z1)) & mask);
+                out.put(base + x, (short) Math.floorDiv(sum + 4, 8));
+            }
+        }
+    }
+
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    public Volume getLevel(int level) {
+        return levels.get(level);
+    }
+
+    // Plane index of the level that covers full-resolution index
+    public static int levelIndex(int index, int level) {
+        return index >> level;
+    }
+
+    /**
+     * Coarsest level whose plane still has at least pixels samples along its longer side, so
+     * rendering it loses nothing on a view that size.
+     */
+    public int levelFor(Plane plane, double pixels) {
+        int level = 0;
+        while (level + 1 < levels.size()) {
+            Volume next = levels.get(level + 1);
+            if (Math.max(plane.width(next), plane.height(next)) < pixels) break;
+            level++;
+        }
+        return level;
+    }
+
+    public long sizeInBytes() {
+        long size = 0;
+        for (int level = 1; level < levels.size(); level++) size += levels.get(level).sizeInBytes();
+        return size;
+    }
+}
@@ -0,0 +1,239 @@
+package com.dicom.viewer;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Direct volume rendering on the CPU: orthographic rays through the volume, trilinear samples
+ * classified by a transfer function and composited front to back, stopping once a ray is nearly
+ * opaque. Rays step over macro cells the transfer function makes transparent. The image is split
+ * into square tiles rendered with fork/join. Renders one image at a time.
+ *
+ * The camera orbits the volume centre. At yaw and pitch zero it looks along +y with +x to the
+ * right and +z up, which is the coronal view's orientation.
+ */
+public class VolumeRaycaster {
+
+    private static final int TILE_SIZE = 32;
+    // Rays stop accumulating past this opacity
+    private static final float OPAQUE = 0.98f;
+
+    private final Volume volume;
+    private final MacroCellGrid grid;
+    private final double spacingX, spacingY, spacingZ;
+    private final boolean signed;
+
+    // Derived from the last transfer function and step length
+    private TransferFunction lastTf;
+    private double lastStep;
+    private float[] stepOpacity;
+    private boolean[] transparent;
+
+    /** Spacings are the positive voxel sizes in mm along x, y and z. */
+    public VolumeRaycaster(Volume volume, double spacingX, double spacingY, double spacingZ, boolean signed) {
+        this.volume = volume;
+        this.spacingX = spacingX > 0 ? spacingX : 1.0;
+        this.spacingY = spacingY > 0 ? spacingY : 1.0;
+        this.spacingZ = spacingZ > 0 ? spacingZ : 1.0;
+        this.signed = signed;
+        this.grid = new MacroCellGrid(volume, signed);
+    }
+
+    public Volume getVolume() {
+        return volume;
+    }
+
+    // Finest voxel size, the natural ray step
+    public double getMinSpacing() {
+        return Math.min(spacingX, Math.min(spacingY, spacingZ));
+    }
+
+    /**
+     * Renders a size x size opaque ARGB image into out. step is the sample distance along each
+     * ray in mm; opacity is corrected for it, so coarser steps only lose detail.
+     */
+    public synchronized void render(double yaw, double pitch, TransferFunction tf, int size, double step, int[] out) {
+        if (tf != lastTf || step != lastStep) {
+            stepOpacity = new float[65536];
+            for (int i = 0; i < stepOpacity.length; i++) {
+                stepOpacity[i] = (float) (1 - Math.pow(1 - tf.opacity(i), step));
+            }
+            if (tf != lastTf) transparent = grid.transparentCells(tf);
+            lastTf = tf;
+            lastStep = step;
+        }
+
+        // Camera basis in mm: yaw turns about +z, then pitch tilts forward towards up
+        double cy = Math.cos(yaw), sy = Math.sin(yaw), cp = Math.cos(pitch), sp = Math.sin(pitch);
+        double[] right = {cy, sy, 0};
+        double[] forward = {-sy * cp, cy * cp, sp};
+        double[] up = {sy * sp, -cy * sp, cp};
+
+        double extentX = (volume.getWidth() - 1) * spacingX;
+        double extentY = (volume.getHeight() - 1) * spacingY;
+        double extentZ = (volume.getDepth() - 1) * spacingZ;
+        double radius = Math.max(0.5 * Math.sqrt(extentX * extentX + extentY * extentY + extentZ * extentZ), 1.0);
+        Camera camera = new Camera(right, up, forward, new double[] {extentX / 2, extentY / 2, extentZ / 2},
+                radius, 2 * radius / size, size, step, tf);
+
+        int tiles = (size + TILE_SIZE - 1) / TILE_SIZE;
+        ForkJoinPool.commonPool().invoke(new TileTask(camera, 0, tiles * tiles, out));
+    }
+
+    private static final class Camera {
+        final double[] right, up, forward, center;
+        final double radius, pixelSize;
+        final int size;
+        final double step;
+        final TransferFunction tf;
+
+        Camera(double[] right, double[] up, double[] forward, double[] center, double radius, double pixelSize,
+               int size, double step, TransferFunction tf) {
+            this.right = right;
+            this.up = up;
+            this.forward = forward;
+            this.center = center;
+            this.radius = radius;
+            this.pixelSize = pixelSize;
+            this.size = size;
+            this.step = step;
+            this.tf = tf;
+        }
+    }
+
+    // Splits a range of tiles in halves down to single tiles
+    private final class TileTask extends RecursiveAction {
+        private final Camera camera;
+        private final int from, to;
+        private final int[] out;
+
+        TileTask(Camera camera, int from, int to, int[] out) {
+            this.camera = camera;
+            this.from = from;
+            this.to = to;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                renderTile(camera, from, out);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(camera, from, middle, out), new TileTask(camera, middle, to, out));
+            }
+        }
+    }
+
+    private void renderTile(Camera camera, int tile, int[] out) {
+        int tiles = (camera.size + TILE_SIZE - 1) / TILE_SIZE;
+        int x0 = (tile % tiles) * TILE_SIZE, y0 = (tile / tiles) * TILE_SIZE;
+        int x1 = Math.min(camera.size, x0 + TILE_SIZE), y1 = Math.min(camera.size, y0 + TILE_SIZE);
+        double half = camera.size / 2.0;
+        for (int j = y0; j < y1; j++) {
+            double v = (half - j - 0.5) * camera.pixelSize;
+            for (int i = x0; i < x1; i++) {
+                double u = (i + 0.5 - half) * camera.pixelSize;
+                double[] f = camera.forward, r = camera.right, up = camera.up, c = camera.center;
+                // Ray start on the near side of the bounding sphere, in voxel coordinates
+                double ox = (c[0] + r[0] * u + up[0] * v - f[0] * camera.radius) / spacingX;
+                double oy = (c[1] + r[1] * u + up[1] * v - f[1] * camera.radius) / spacingY;
+                double oz = (c[2] + r[2] * u + up[2] * v - f[2] * camera.radius) / spacingZ;
+                out[j * camera.size + i] = castRay(camera, ox, oy, oz,
+                        f[0] / spacingX, f[1] / spacingY, f[2] / spacingZ);
+            }
+        }
+    }
+
+    // Composites one ray over black; (dx, dy, dz) is one mm of travel in voxel units
+    private int castRay(Camera camera, double ox, double oy, double oz, double dx, double dy, double dz) {
+        // Clip to the box of voxel centres
+        double near = 0, far = 2 * camera.radius;
+        double[] clip = {near, far};
+        if (!clip(ox, dx, volume.getWidth() - 1, clip)
+                || !clip(oy, dy, volume.getHeight() - 1, clip)
+                || !clip(oz, dz, volume.getDepth() - 1, clip)) {
+            return 0xFF000000;
+        }
+        near = clip[0];
+        far = clip[1];
+
+        ShortBuffer voxels = volume.getVoxels();
+        int maxCellX = grid.getCellsX() - 1, maxCellY = grid.getCellsY() - 1, maxCellZ = grid.getCellsZ() - 1;
+        float red = 0, green = 0, blue = 0, alpha = 0;
+        double step = camera.step;
+        long k = 0;
+        for (double t = near; t <= far && alpha < OPAQUE; t = near + k * step) {
+            double x = ox + dx * t, y = oy + dy * t, z = oz + dz * t;
+            int cx = Math.max(0, Math.min(maxCellX, (int) x >> MacroCellGrid.CELL_SHIFT));
+            int cy = Math.max(0, Math.min(maxCellY, (int) y >> MacroCellGrid.CELL_SHIFT));
+            int cz = Math.max(0, Math.min(maxCellZ, (int) z >> MacroCellGrid.CELL_SHIFT));
+            if (transparent[grid.index(cx, cy, cz)]) {
+                // Jump to the first sample past the cell's far face
+                double exit = Math.min(cellExit(x, dx, cx), Math.min(cellExit(y, dy, cy), cellExit(z, dz, cz)));
+                k = Math.max(k + 1, (long) Math.floor((t + exit - near) / step) + 1);
+                continue;
+            }
+            int value = sample(voxels, x, y, z);
+            float a = stepOpacity[value & 0xFFFF];
+            if (a > 0) {
+                int rgb = camera.tf.color(value);
+                float weight = (1 - alpha) * a;
+                red += weight * ((rgb >> 16) & 0xFF);
+                green += weight * ((rgb >> 8) & 0xFF);
+                blue += weight * (rgb & 0xFF);
+                alpha += weight;
+            }
+            k++;
+        }
+        return 0xFF000000 | (Math.min(255, Math.round(red)) << 16)
+                | (Math.min(255, Math.round(green)) << 8) | Math.min(255, Math.round(blue));
+    }
+
+    // Narrows clip[0..1] to where o + d * t lies in [0, max]; false when that is empty
+    private static boolean clip(double o, double d, double max, double[] clip) {
+        if (d == 0) return o >= 0 && o <= max;
+        double t0 = (0 - o) / d, t1 = (max - o) / d;
+        clip[0] = Math.max(clip[0], Math.min(t0, t1));
+        clip[1] = Math.min(clip[1], Math.max(t0, t1));
+        return clip[0] <= clip[1];
+    }
+
+    // Ray distance from p to the far face of cell along one axis
+    private static double cellExit(double p, double d, int cell) {
+        if (d > 0) return (((cell + 1) << MacroCellGrid.CELL_SHIFT) - p) / d;
+        if (d < 0) return ((cell << MacroCellGrid.CELL_SHIFT) - p) / d;
+        return Double.POSITIVE_INFINITY;
+    }
+
+    // Trilinear sample at a point inside the box of voxel centres, rounded to a stored value
+    private int sample(ShortBuffer voxels, double x, double y, double z) {
+        int w = volume.getWidth(), h = volume.getHeight(), d = volume.getDepth();
+        int rowStride = volume.getRowStride(), sliceStride = volume.getSliceStride();
+        int mask = signed ? -1 : 0xFFFF;
+        int x0 = Math.max(0, Math.min((int) x, w - 2)), y0 = Math.max(0, Math.min((int) y, h - 2));
+        int z0 = Math.max(0, Math.min((int) z, d - 2));
+        double fx = Math.max(0, Math.min(1, x - x0)), fy = Math.max(0, Math.min(1, y - y0));
+        double fz = Math.max(0, Math.min(1, z - z0));
+        int sx = w > 1 ? 1 : 0, sy = h > 1 ? rowStride : 0, sz = d > 1 ? sliceStride : 0;
+
+        int base = z0 * sliceStride + y0 * rowStride + x0;
+        double c000 = voxels.get(base) & mask;
+        double c100 = voxels.get(base + sx) & mask;
+        double c010 = voxels.get(base + sy) & mask;
+        double c110 = voxels.get(base + sy + sx) & mask;
+        double c001 = voxels.get(base + sz) & mask;
+        double c101 = voxels.get(base + sz + sx) & mask;
+        double c011 = voxels.get(base + sz + sy) & mask;
+        double c111 = voxels.get(base + sz + sy + sx) & mask;
+
+        double c00 = c000 + (c100 - c000) * fx;
+        double c10 = c010 + (c110 - c010) * fx;
+        double c01 = c001 + (c101 - c001) * fx;
+        double c11 = c011 + (c111 - c011) * fx;
+        double c0 = c00 + (c10 - c00) * fy;
+        double c1 = c01 + (c11 - c01) * fy;
+        return (int) Math.round(c0 + (c1 - c0) * fz);
+    }
+}
@@ -0,0 +1,283 @@
+package com.dicom.viewer;
+
+import java.nio.ShortBuffer;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Intensity statistics of a volume in stored units: min, max and a histogram per axial slice and
+ * for the whole volume, plus a percentile auto window for every slice of every plane. Gathered
+ * by a Builder while the loader decodes each slice, so the voxels are read once while still in
+ * cache rather than in a second sweep. Immutable once built.
+ */
+public class VolumeStats {
+
+    // Histogram bins span 64 stored values each, 1024 bins over the 16-bit range
+    public static final int BIN_SHIFT = 6;
+    public static final int BINS = 65536 >> BIN_SHIFT;
+    // Coronal and sagittal windows come from every row and column of the volume, so their
+    // histograms are coarser, 256 bins of 256 values, to keep them small enough to stay in cache
+    static final int PLANE_BIN_SHIFT = 8;
+    static final int PLANE_BINS = 65536 >> PLANE_BIN_SHIFT;
+    // The auto window spans these percentiles, so a few outliers or padding values do not flatten it
+    public static final double LOW_PERCENTILE = 0.01;
+    public static final double HIGH_PERCENTILE = 0.99;
+
+    // A window in modality units
+    public static class Window {
+        public final double center, width;
+
+        public Window(double center, double width) {
+            this.center = center;
+            this.width = width;
+        }
+    }
+
+    private final boolean signed;
+    private final int[][] sliceHistograms;
+    private final int[] sliceMin, sliceMax;
+    private final int[] histogram = new int[BINS];
+    private final int min, max;
+    // Stored [low, high] per plane index, interleaved
+    private final Map<Plane, float[]> windows;
+
+    VolumeStats(boolean signed, int[][] sliceHistograms, int[] sliceMin, int[] sliceMax, Map<Plane, float[]> windows) {
+        this.signed = signed;
+        this.sliceHistograms = sliceHistograms;
+        this.sliceMin = sliceMin;
+        this.sliceMax = sliceMax;
+        this.windows = windows;
+        int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+        for (int z = 0; z < sliceHistograms.length; z++) {
+            for (int b = 0; b < BINS; b++) histogram[b] += sliceHistograms[z][b];
+            lo = Math.min(lo, sliceMin[z]);
+            hi = Math.max(hi, sliceMax[z]);
+        }
+        this.min = lo;
+        this.max = hi;
+    }
+
+    public boolean isSigned() { return signed; }
+    public int getDepth() { return sliceHistograms.length; }
+    public int getMin() { return min; }
+    public int getMax() { return max; }
+    public int getSliceMin(int z) { return sliceMin[z]; }
+    public int getSliceMax(int z) { return sliceMax[z]; }
+
+    // Shared arrays, not copies; callers must not modify them
+    public int[] getHistogram() { return histogram; }
+    public int[] getSliceHistogram(int z) { return sliceHistograms[z]; }
+
+    // First stored value counted by a bin
+    public int binStart(int bin) {
+        return (bin << BIN_SHIFT) - (signed ? 32768 : 0);
+    }
+
+    // Stored value below which fraction p of the voxels lie, interpolated within its bin
+    public double percentile(double p) {
+        return percentile(histogram, p, signed);
+    }
+
+    public double slicePercentile(int z, double p) {
+        return percentile(sliceHistograms[z], p, signed);
+    }
+
+    static double percentile(int[] histogram, double p, boolean signed) {
+        return percentile(histogram, 0, histogram.length, p, signed);
+    }
+
+    // Percentile of the bins histogram[from, from + bins), which span the 16-bit range evenly
+    static double percentile(int[] histogram, int from, int bins, double p, boolean signed) {
+        int binWidth = 65536 / bins;
+        long total = 0;
+        for (int b = 0; b < bins; b++) total += histogram[from + b];
+        if (total == 0) return 0;
+        double target = p * total;
+        long below = 0;
+        for (int b = 0; b < bins; b++) {
+            int count = histogram[from + b];
+            if (count > 0 && below + count >= target) {
+                double start = b * binWidth - (signed ? 32768 : 0);
+                return start + (target - below) / count * binWidth;
+            }
+            below += count;
+        }
+        return 65536 - (signed ? 32768 : 0);
+    }
+
+    // Auto window of the whole volume
+    public Window autoWindow(double slope, double intercept) {
+        return toWindow(percentile(LOW_PERCENTILE), percentile(HIGH_PERCENTILE), slope, intercept);
+    }
+
+    // Auto window of one slice of a plane; a lookup, cheap enough to call per render
+    public Window autoWindow(Plane plane, int index, double slope, double intercept) {
+        float[] w = windows.get(plane);
+        return toWindow(w[2 * index], w[2 * index + 1], slope, intercept);
+    }
+
+    float[] getWindows(Plane plane) {
+        return windows.get(plane);
+    }
+
+    private static Window toWindow(double low, double high, double slope, double intercept) {
+        return new Window((low + high) / 2 * slope + intercept, Math.max(1.0, (high - low) * Math.abs(slope)));
+    }
+
+    /**
+     * Collects statistics slice by slice from the decode threads. Coronal and sagittal histograms
+     * go into partials that a thread holds only while it adds a slice, so there are never more of
+     * them than slices being added at once, at most the decode pool size; they are merged once in
+     * build().
+     */
+    public static class Builder {
+        private final int width, height, depth;
+        private final boolean signed;
+        private final int[][] sliceHistograms;
+        private final int[] sliceMin, sliceMax;
+        private final int maxPartials;
+        private final List<Partial> partials = new CopyOnWriteArrayList<>();
+        private final BlockingQueue<Partial> idle;
+
+        // Histograms of coronal rows and sagittal columns over the slices added through it. Rows
+        // are laid out [y][bin]; columns [bin][x], so neighbouring voxels of similar value count
+        // into neighbouring ints rather than one histogram apart.
+        private final class Partial {
+            final int[] rows = new int[height * PLANE_BINS];
+            final int[] columns = new int[PLANE_BINS * width];
+        }
+
+        public Builder(int width, int height, int depth, boolean signed) {
+            this(width, height, depth, signed, Runtime.getRuntime().availableProcessors());
+        }
+
+        // maxPartials is the number of threads that may add slices at once
+        public Builder(int width, int height, int depth, boolean signed, int maxPartials) {
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.signed = signed;
+            this.sliceHistograms = new int[depth][];
+            this.sliceMin = new int[depth];
+            this.sliceMax = new int[depth];
+            this.maxPartials = Math.max(1, maxPartials);
+            this.idle = new ArrayBlockingQueue<>(this.maxPartials);
+        }
+
+        // An idle partial, a new one while fewer than maxPartials exist, or else the next one returned
+        private Partial acquire() {
+            Partial p = idle.poll();
+            if (p != null) return p;
+            synchronized (partials) {
+                if (partials.size() < maxPartials) {
+                    p = new Partial();
+                    partials.add(p);
+                    return p;
+                }
+            }
+            try {
+                return idle.take();
+            } catch (InterruptedException e) {
+                // Cancelled load; the statistics are about to be discarded
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        // Called once per decoded slice, right after it was written; slices may arrive on any thread
+        public void addSlice(Volume volume, int z) {
+            ShortBuffer voxels = volume.getVoxels();
+            int mask = signed ? -1 : 0xFFFF;
+            int offset = signed ? 32768 : 0;
+            int[] histogram = new int[BINS];
+            Partial p = acquire();
+            if (p == null) return;
+            int[] rows = p.rows, columns = p.columns;
+            int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+            for (int y = 0; y < height; y++) {
+                int base = volume.index(0, y, z);
+                int row = y * PLANE_BINS;
+                for (int x = 0; x < width; x++) {
+                    int v = voxels.get(base + x) & mask;
+                    int b = (v + offset) >> BIN_SHIFT;
+                    int pb = b >> (PLANE_BIN_SHIFT - BIN_SHIFT);
+                    histogram[b]++;
+                    rows[row + pb]++;
+                    columns[pb * width + x]++;
+                    lo = Math.min(lo, v);
+                    hi = Math.max(hi, v);
+                }
+            }
+            idle.offer(p);
+            sliceHistograms[z] = histogram;
+            sliceMin[z] = lo;
+            sliceMax[z] = hi;
+        }
+
+        // Auto window of a slice decoded so far, or null if it has not been added yet
+        public Window sliceWindow(int z, double slope, double intercept) {
+            int[] histogram = sliceHistograms[z];
+            if (histogram == null) return null;
+            return toWindow(percentile(histogram, LOW_PERCENTILE, signed), percentile(histogram, HIGH_PERCENTILE, signed),
+                    slope, intercept);
+        }
+
+        // Drops the slices marked failed, matching the compacted volume; they must not have been added
+        public VolumeStats build(boolean[] failed) {
+            int kept = 0;
+            for (int z = 0; z < depth; z++) {
+                if (!failed[z] && sliceHistograms[z] != null) kept++;
+            }
+            int[][] histograms = new int[kept][];
+            int[] mins = new int[kept], maxs = new int[kept];
+            for (int z = 0, k = 0; z < depth; z++) {
+                if (failed[z] || sliceHistograms[z] == null) continue;
+                histograms[k] = sliceHistograms[z];
+                mins[k] = sliceMin[z];
+                maxs[k] = sliceMax[z];
+                k++;
+            }
+
+            int[] rows = new int[height * PLANE_BINS];
+            int[] columns = new int[width * PLANE_BINS];
+            for (Partial p : partials) {
+                for (int i = 0; i < rows.length; i++) rows[i] += p.rows[i];
+                // Back to [x][bin], so each column's histogram is contiguous for the percentiles
+                for (int b = 0; b < PLANE_BINS; b++) {
+                    for (int x = 0; x < width; x++) columns[x * PLANE_BINS + b] += p.columns[b * width + x];
+                }
+            }
+            partials.clear();
+            idle.clear();
+
+            Map<Plane, float[]> windows = new EnumMap<>(Plane.class);
+            windows.put(Plane.AXIAL, percentileWindows(histograms, signed));
+            windows.put(Plane.CORONAL, percentileWindows(rows, height, signed));
+            windows.put(Plane.SAGITTAL, percentileWindows(columns, width, signed));
+            return new VolumeStats(signed, histograms, mins, maxs, windows);
+        }
+    }
+
+    static float[] percentileWindows(int[][] histograms, boolean signed) {
+        float[] windows = new float[2 * histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            windows[2 * i] = (float) percentile(histograms[i], LOW_PERCENTILE, signed);
+            windows[2 * i + 1] = (float) percentile(histograms[i], HIGH_PERCENTILE, signed);
+        }
+        return windows;
+    }
+
+    // Windows of count histograms of PLANE_BINS bins each, stored back to back
+    static float[] percentileWindows(int[] histograms, int count, boolean signed) {
+        float[] windows = new float[2 * count];
+        for (int i = 0; i < count; i++) {
+            windows[2 * i] = (float) percentile(histograms, i * PLANE_BINS, PLANE_BINS, LOW_PERCENTILE, signed);
+            windows[2 * i + 1] = (float) percentile(histograms, i * PLANE_BINS, PLANE_BINS, HIGH_PERCENTILE, signed);
+        }
+        return windows;
+    }
+}
@@ -0,0 +1,195 @@
+package com.dicom.viewer;
+
+import javafx.application.Platform;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.StackPane;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The 3D viewport: a ray-cast rendering of the volume that rotates with a left-drag. While
+ * dragging it renders a coarse preview (a third of the resolution, half the samples per ray),
+ * and the full image once the mouse is released. Rendering runs on one background thread; only
+ * the newest request is kept, and only the newest finished image is handed to the FX thread.
+ */
+public class VolumeView extends StackPane {
+
+    private static final int PREVIEW_DIVISOR = 3;
+    // Radians of rotation per pixel dragged
+    private static final double DRAG_SPEED = 0.01;
+
+    private static final class Job {
+        final VolumeRaycaster raycaster;
+        final double yaw, pitch;
+        final TransferFunction tf;
+        final boolean preview;
+
+        Job(VolumeRaycaster raycaster, double yaw, double pitch, TransferFunction tf, boolean preview) {
+            this.raycaster = raycaster;
+            this.yaw = yaw;
+            this.pitch = pitch;
+            this.tf = tf;
+            this.preview = preview;
+        }
+    }
+
+    private static final class Result {
+        final VolumeRaycaster raycaster;
+        final RenderCache.Frame frame;
+
+        Result(VolumeRaycaster raycaster, RenderCache.Frame frame) {
+            this.raycaster = raycaster;
+            this.frame = frame;
+        }
+    }
+
+    private final int size;
+    private final ImageView view = new ImageView();
+    private final PlaneImage image = new PlaneImage();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "volume-render");
+        t.setDaemon(true);
+        return t;
+    });
+    // Guarded by this
+    private Job pending;
+    private boolean busy;
+    private final AtomicReference<Result> ready = new AtomicReference<>();
+    private final AtomicBoolean handOffScheduled = new AtomicBoolean();
+
+    // FX thread state; raycaster is also read by the worker
+    private Volume volume;
+    private volatile VolumeRaycaster raycaster;
+    private TransferFunction.Preset preset = TransferFunction.Preset.BONE;
+    private TransferFunction tf;
+    private double slope = 1, intercept = 0;
+    private boolean signed;
+    private double yaw, pitch;
+    private double dragX, dragY;
+
+    public VolumeView(double size) {
+        this.size = (int) size;
+        view.setFitWidth(size);
+        view.setFitHeight(size);
+        view.setPreserveRatio(true);
+        view.setSmooth(true);
+        getChildren().add(view);
+        setPrefSize(size, size);
+        setStyle("-fx-background-color: black;");
+        setupMouseHandlers();
+    }
+
+    private void setupMouseHandlers() {
+        setOnMousePressed(e -> {
+            if (e.getButton() != MouseButton.PRIMARY) return;
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        setOnMouseDragged(e -> {
+            if (e.getButton() != MouseButton.PRIMARY) return;
+            yaw += (e.getX() - dragX) * DRAG_SPEED;
+            pitch = Math.max(-Math.PI / 2, Math.min(Math.PI / 2, pitch + (e.getY() - dragY) * DRAG_SPEED));
+            dragX = e.getX();
+            dragY = e.getY();
+            requestRender(true);
+        });
+        setOnMouseReleased(e -> {
+            if (e.getButton() == MouseButton.PRIMARY) requestRender(false);
+        });
+    }
+
+    /**
+     * Shows a new volume, or nothing when volume is null. The macro-cell grid is built on the
+     * render thread; spacings are positive voxel sizes in mm.
+     */
+    public void setVolume(Volume volume, double spacingX, double spacingY, double spacingZ,
+                          boolean signed, double slope, double intercept) {
+        this.volume = volume;
+        this.raycaster = null;
+        ready.set(null);
+        if (volume == null) {
+            view.setImage(null);
+            return;
+        }
+        this.signed = signed;
+        this.slope = slope;
+        this.intercept = intercept;
+        tf = new TransferFunction(preset, slope, intercept, signed);
+        worker.execute(() -> {
+            VolumeRaycaster built = new VolumeRaycaster(volume, spacingX, spacingY, spacingZ, signed);
+            Platform.runLater(() -> {
+                if (this.volume != volume) return;
+                raycaster = built;
+                requestRender(false);
+            });
+        });
+    }
+
+    public void setPreset(TransferFunction.Preset preset) {
+        this.preset = preset;
+        tf = new TransferFunction(preset, slope, intercept, signed);
+        requestRender(false);
+    }
+
+    public void resetView() {
+        yaw = 0;
+        pitch = 0;
+        requestRender(false);
+    }
+
+    private void requestRender(boolean preview) {
+        VolumeRaycaster current = raycaster;
+        if (current == null) return;
+        synchronized (this) {
+            pending = new Job(current, yaw, pitch, tf, preview);
+            if (!busy) {
+                busy = true;
+                worker.execute(this::drain);
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                job = pending;
+                pending = null;
+                if (job == null) {
+                    busy = false;
+                    return;
+                }
+            }
+            try {
+                render(job);
+            } catch (RuntimeException e) {
+                System.err.println("Failed to render volume - " + e);
+            }
+        }
+    }
+
+    private void render(Job job) {
+        if (job.raycaster != raycaster) return;
+        int imageSize = job.preview ? Math.max(1, size / PREVIEW_DIVISOR) : size;
+        double step = job.raycaster.getMinSpacing() * (job.preview ? 2 : 1);
+        RenderCache.Frame frame = new RenderCache.Frame(imageSize, imageSize);
+        job.raycaster.render(job.yaw, job.pitch, job.tf, imageSize, step, frame.pixels);
+
+        ready.set(new Result(job.raycaster, frame));
+        if (handOffScheduled.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                handOffScheduled.set(false);
+                Result result = ready.getAndSet(null);
+                if (result == null || result.raycaster != raycaster) return;
+                if (image.resize(result.frame.width, result.frame.height)) {
+                    view.setImage(image.getImage());
+                }
+                image.render(result.frame);
+            });
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.dicom.viewer;
+
+import java.nio.IntBuffer;
+
+/**
+ * Window/level as a 16-bit to 8-bit lookup table over every possible stored value, with the
+ * modality rescale folded in. Built once per window change; mapping a plane is then one table
+ * lookup per pixel. Instances are immutable, so render threads can share them.
+ */
+public class WindowLut {
+
+    // Common CT windows, in Hounsfield units
+    public enum Preset {
+        LUNG("Lung", -600, 1500),
+        BONE("Bone", 400, 1800),
+        BRAIN("Brain", 40, 80);
+
+        public final String label;
+        public final double center, width;
+
+        Preset(String label, double center, double width) {
+            this.label = label;
+            this.center = center;
+            this.width = width;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final double center, width;
+    private final double slope, intercept;
+    private final boolean signed;
+    private final byte[] gray = new byte[65536];
+    private final int[] argb = new int[65536];
+
+    public WindowLut(double center, double width, double slope, double intercept, boolean signed) {
+        this.center = center;
+        this.width = Math.max(1.0, width);
+        this.slope = slope;
+        this.intercept = intercept;
+        this.signed = signed;
+
+        // DICOM linear VOI function, evaluated once per stored value
+        double span = Math.max(this.width - 1, 1e-6);
+        double low = center - 0.5;
+        for (int i = 0; i < gray.length; i++) {
+            int stored = signed ? (short) i : i;
+            double value = stored * slope + intercept;
+            int g = (int) (((value - low) / span + 0.5) * 255.0);
+            g = Math.max(0, Math.min(255, g));
+            gray[i] = (byte) g;
+            argb[i] = 0xFF000000 | (g << 16) | (g << 8) | g;
+        }
+    }
+
+    // Same rescale and signedness with a different window; rebuilt only when the window actually moved
+    public WindowLut withWindow(double center, double width) {
+        if (center == this.center && Math.max(1.0, width) == this.width) return this;
+        return new WindowLut(center, width, slope, intercept, signed);
+    }
+
+    public double getCenter() { return center; }
+    public double getWidth() { return width; }
+    public boolean isSigned() { return signed; }
+
+    public int gray(short stored) {
+        return gray[stored & 0xFFFF] & 0xFF;
+    }
+
+    public void apply(short[] src, byte[] dst, int count) {
+        byte[] table = gray;
+        for (int i = 0; i < count; i++) {
+            dst[i] = table[src[i] & 0xFFFF];
+        }
+    }
+
+    public void apply(short[] src, int[] dst, int count) {
+        int[] table = argb;
+        for (int i = 0; i < count; i++) {
+            dst[i] = table[src[i] & 0xFFFF];
+        }
+    }
+
+    // Opaque grey ARGB, which is also valid premultiplied ARGB
+    public void apply(short[] src, IntBuffer dst, int count) {
+        int[] table = argb;
+        for (int i = 0; i < count; i++) {
+            dst.put(i, table[src[i] & 0xFFFF]);
+        }
+    }
+}
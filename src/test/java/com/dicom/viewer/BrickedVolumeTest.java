@@ -0,0 +1,62 @@
+package com.dicom.viewer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * BrickedVolume must reformat exactly like PlaneExtractor. The volume is odd-sized in every
+ * dimension, so the edge bricks are partly padding for both brick sizes.
+ */
+class BrickedVolumeTest {
+
+    private static final int WIDTH = 37, HEIGHT = 21, DEPTH = 19;
+
+    private static Volume randomVolume() {
+        Volume volume = new Volume(WIDTH, HEIGHT, DEPTH);
+        Random random = new Random(7);
+        for (int i = 0; i < WIDTH * HEIGHT * DEPTH; i++) {
+            volume.getVoxels().put(i, (short) random.nextInt());
+        }
+        return volume;
+    }
+
+    private static void assertSameExtraction(int brickSize) {
+        Volume volume = randomVolume();
+        BrickedVolume bricked = new BrickedVolume(volume, brickSize);
+        for (Plane plane : Plane.values()) {
+            short[] actual = new short[plane.width(volume) * plane.height(volume)];
+            for (int index = 0; index < plane.count(volume); index++) {
+                bricked.extract(plane, index, actual);
+                assertArrayEquals(PlaneExtractor.extract(volume, plane, index), actual,
+                        plane + " slice " + index + " with bricks of " + brickSize);
+            }
+        }
+    }
+
+    @Test
+    void extractMatchesPlaneExtractorWithBricksOf4() {
+        assertSameExtraction(4);
+    }
+
+    @Test
+    void extractMatchesPlaneExtractorWithBricksOf16() {
+        assertSameExtraction(16);
+    }
+
+    @Test
+    void getMatchesSourceVoxels() {
+        Volume volume = randomVolume();
+        BrickedVolume bricked = new BrickedVolume(volume, 16);
+        for (int z = 0; z < DEPTH; z++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals(volume.getVoxels().get(volume.index(x, y, z)), bricked.get(x, y, z));
+                }
+            }
+        }
+    }
+}
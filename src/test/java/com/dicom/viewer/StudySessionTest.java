@@ -0,0 +1,131 @@
+package com.dicom.viewer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StudySessionTest {
+
+    // Each study's volume is 16x16x4 voxels, 2 KB on the heap
+    private static final int SIZE = 16, DEPTH = 4;
+    private static final long STUDY_BYTES = (long) SIZE * SIZE * DEPTH * Short.BYTES;
+
+    @TempDir
+    Path temp;
+
+    private File[] files(String study) throws IOException {
+        Path dir = Files.createDirectories(temp.resolve(study));
+        File[] files = new File[DEPTH];
+        for (int z = 0; z < DEPTH; z++) {
+            files[z] = Files.createFile(dir.resolve(z + ".dcm")).toFile();
+        }
+        return files;
+    }
+
+    private static Series series(int seed) {
+        Volume volume = new Volume(SIZE, SIZE, DEPTH);
+        VolumeStats.Builder stats = new VolumeStats.Builder(SIZE, SIZE, DEPTH, false, 1);
+        List<DicomSlice> slices = new ArrayList<>();
+        for (int z = 0; z < DEPTH; z++) {
+            for (int i = 0; i < SIZE * SIZE; i++) {
+                volume.getVoxels().put(volume.index(0, 0, z) + i, (short) (seed * 100 + z));
+            }
+            stats.addSlice(volume, z);
+            DicomSlice slice = new DicomSlice();
+            slice.rows = SIZE;
+            slice.columns = SIZE;
+            slice.pixelSpacing = new double[] {1, 1};
+            slice.imageOrientation = new double[] {1, 0, 0, 0, 1, 0};
+            slice.imagePosition = new double[] {0, 0, z};
+            slices.add(slice);
+        }
+        return new Series(slices, volume, stats.build(new boolean[DEPTH]));
+    }
+
+    private static void await(CountDownLatch spilled) throws InterruptedException {
+        assertTrue(spilled.await(10, TimeUnit.SECONDS), "Spill did not finish");
+    }
+
+    @Test
+    void lastViewedStudyIsNeverSpilled() throws Exception {
+        VolumeCache cache = new VolumeCache(temp.resolve("cache"), 1L << 30);
+        // Smaller than a single study, so every study but the current one has to go
+        StudySession session = new StudySession(STUDY_BYTES / 2, cache);
+        CountDownLatch spilled = new CountDownLatch(1);
+        session.setListener(spilled::countDown);
+
+        File[] priorFiles = files("prior");
+        Series priorSeries = series(1);
+        StudySession.Study prior = session.open(priorFiles, priorSeries);
+        // Alone and over budget, but viewed last
+        assertSame(priorSeries, session.view(prior));
+        assertEquals(STUDY_BYTES, session.residentBytes());
+
+        Series currentSeries = series(2);
+        StudySession.Study current = session.open(files("current"), currentSeries);
+        await(spilled);
+
+        assertNull(session.view(prior), "Least recently viewed study spilled");
+        assertSame(currentSeries, session.view(current), "Last viewed study kept");
+        assertEquals(STUDY_BYTES, session.residentBytes());
+        assertTrue(cache.contains(priorFiles), "Spilled study written to the cache");
+
+        // Reopened from the cache as a mapping, which is not charged, while current becomes the one to spill
+        Series reloaded = cache.get(priorFiles);
+        assertNotNull(reloaded);
+        assertEquals(priorSeries.volume.getVoxels().get(0), reloaded.volume.getVoxels().get(0));
+        CountDownLatch spilledAgain = new CountDownLatch(1);
+        session.setListener(spilledAgain::countDown);
+        session.open(priorFiles, reloaded);
+        await(spilledAgain);
+
+        assertSame(reloaded, session.view(prior));
+        assertNull(session.view(current));
+        assertEquals(0, session.residentBytes());
+    }
+
+    @Test
+    void viewDuringSpillKeepsTheStudy() throws Exception {
+        VolumeCache cache = new VolumeCache(temp.resolve("cache"), 1L << 30);
+        // Room for two studies
+        StudySession session = new StudySession(2 * STUDY_BYTES, cache);
+        CountDownLatch spilled = new CountDownLatch(2);
+        session.setListener(spilled::countDown);
+
+        Series firstSeries = series(1);
+        StudySession.Study first = session.open(files("first"), firstSeries);
+        StudySession.Study second = session.open(files("second"), series(2));
+        assertEquals(2 * STUDY_BYTES, session.residentBytes());
+
+        // Holding the session lock keeps the spill thread from starting on first before it is viewed
+        StudySession.Study third;
+        synchronized (session) {
+            third = session.open(files("third"), series(3));
+            assertSame(firstSeries, session.view(first));
+        }
+
+        // Spills second and third behind first's abandoned spill on the single spill thread
+        StudySession.Study fourth = session.open(files("fourth"), series(4));
+        await(spilled);
+
+        assertSame(firstSeries, session.view(first), "Study viewed during its spill kept");
+        assertNull(session.view(second));
+        assertNull(session.view(third));
+        assertNotNull(session.view(fourth));
+        assertEquals(2 * STUDY_BYTES, session.residentBytes());
+    }
+}
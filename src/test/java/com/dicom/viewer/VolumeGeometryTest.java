@@ -0,0 +1,158 @@
+package com.dicom.viewer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VolumeGeometryTest {
+
+    private static final double EPSILON = 1e-9;
+
+    // Rows along (1, 1, 0) and columns tilted down from (-1, 1, 0): a stack off every patient axis
+    private static final double[] OBLIQUE = {
+            Math.sqrt(0.5), Math.sqrt(0.5), 0, -0.6 * Math.sqrt(0.5), 0.6 * Math.sqrt(0.5), -0.8};
+    // Axial orientation whose normal points towards the feet
+    private static final double[] FEET_FIRST = {1, 0, 0, 0, -1, 0};
+
+    private static DicomSlice slice(double[] orientation, double[] position, double columnSpacing, double rowSpacing) {
+        DicomSlice slice = new DicomSlice();
+        slice.rows = 8;
+        slice.columns = 8;
+        slice.imageOrientation = orientation.clone();
+        slice.imagePosition = position.clone();
+        slice.pixelSpacing = new double[] {columnSpacing, rowSpacing};
+        return slice;
+    }
+
+    private static double[] normal(double[] orientation) {
+        return new double[] {
+                orientation[1] * orientation[5] - orientation[2] * orientation[4],
+                orientation[2] * orientation[3] - orientation[0] * orientation[5],
+                orientation[0] * orientation[4] - orientation[1] * orientation[3]};
+    }
+
+    // Slices at the given distances along the orientation's normal from origin
+    private static List<DicomSlice> stack(double[] orientation, double[] origin, double... distances) {
+        double[] normal = normal(orientation);
+        List<DicomSlice> slices = new ArrayList<>();
+        for (double d : distances) {
+            double[] position = {origin[0] + d * normal[0], origin[1] + d * normal[1], origin[2] + d * normal[2]};
+            slices.add(slice(orientation, position, 0.7, 1.3));
+        }
+        return slices;
+    }
+
+    private static double[] pointAt(double[] orientation, double[] origin, double distance) {
+        return stack(orientation, origin, distance).get(0).imagePosition;
+    }
+
+    @Test
+    void voxelToPatientStepsAlongEachAxisByItsSpacing() {
+        double[] origin = {-20, 35.5, 110};
+        VolumeGeometry geometry = new VolumeGeometry(stack(OBLIQUE, origin, 0, 2.5, 5, 7.5));
+        double[] normal = normal(OBLIQUE);
+        double[] out = new double[3];
+
+        geometry.voxelToPatient(0, 0, 0, out);
+        assertArrayEquals(origin, out, EPSILON);
+        geometry.voxelToPatient(1, 0, 0, out);
+        assertArrayEquals(new double[] {origin[0] + 0.7 * OBLIQUE[0], origin[1] + 0.7 * OBLIQUE[1], origin[2]}, out, EPSILON);
+        geometry.voxelToPatient(0, 1, 0, out);
+        assertArrayEquals(new double[] {
+                origin[0] + 1.3 * OBLIQUE[3], origin[1] + 1.3 * OBLIQUE[4], origin[2] + 1.3 * OBLIQUE[5]}, out, EPSILON);
+        geometry.voxelToPatient(0, 0, 3, out);
+        assertArrayEquals(new double[] {
+                origin[0] + 7.5 * normal[0], origin[1] + 7.5 * normal[1], origin[2] + 7.5 * normal[2]}, out, EPSILON);
+        assertEquals(2.5, Math.abs(geometry.getSliceSpacing()), EPSILON);
+    }
+
+    @Test
+    void patientToVoxelInvertsVoxelToPatient() {
+        double[] origin = {-20, 35.5, 110};
+        for (double[] orientation : new double[][] {OBLIQUE, FEET_FIRST}) {
+            VolumeGeometry geometry = new VolumeGeometry(stack(orientation, origin, 0, 2.5, 5, 7.5));
+            double[] patient = new double[3], voxel = new double[3];
+            for (double[] v : new double[][] {{0, 0, 0}, {7, 7, 3}, {3.25, 0.5, 1.75}, {-2, 11, 5}}) {
+                geometry.voxelToPatient(v[0], v[1], v[2], patient);
+                geometry.patientToVoxel(patient, voxel);
+                assertArrayEquals(v, voxel, 1e-9, Arrays.toString(orientation));
+            }
+        }
+    }
+
+    @Test
+    void nearestSliceWithUnevenGaps() {
+        double[] origin = {4, -3, 50};
+        VolumeGeometry geometry = new VolumeGeometry(stack(OBLIQUE, origin, 0, 1, 3, 6));
+
+        // On each slice and at the ends of the stack
+        assertEquals(0, geometry.nearestSlice(pointAt(OBLIQUE, origin, 0)));
+        assertEquals(1, geometry.nearestSlice(pointAt(OBLIQUE, origin, 1)));
+        assertEquals(2, geometry.nearestSlice(pointAt(OBLIQUE, origin, 3)));
+        assertEquals(3, geometry.nearestSlice(pointAt(OBLIQUE, origin, 6)));
+        // Between slices, nearer to one side
+        assertEquals(1, geometry.nearestSlice(pointAt(OBLIQUE, origin, 1.9)));
+        assertEquals(2, geometry.nearestSlice(pointAt(OBLIQUE, origin, 2.1)));
+        assertEquals(3, geometry.nearestSlice(pointAt(OBLIQUE, origin, 4.6)));
+        // Past either end of the stack
+        assertEquals(0, geometry.nearestSlice(pointAt(OBLIQUE, origin, -40)));
+        assertEquals(3, geometry.nearestSlice(pointAt(OBLIQUE, origin, 6.01)));
+        assertEquals(3, geometry.nearestSlice(pointAt(OBLIQUE, origin, 200)));
+    }
+
+    @Test
+    void nearestSliceBreaksTiesTowardsTheFirstSlice() {
+        // Axial, so positions along the normal are exact and the midpoints are true ties
+        double[] axial = {1, 0, 0, 0, 1, 0};
+        VolumeGeometry geometry = new VolumeGeometry(stack(axial, new double[] {0, 0, 0}, 0, 1, 3, 6));
+        assertEquals(0, geometry.nearestSlice(new double[] {5, 5, 0.5}));
+        assertEquals(1, geometry.nearestSlice(new double[] {5, 5, 2}));
+        assertEquals(2, geometry.nearestSlice(new double[] {5, 5, 4.5}));
+    }
+
+    @Test
+    void nearestSliceOfSingleSlice() {
+        double[] origin = {0, 0, 12};
+        VolumeGeometry geometry = new VolumeGeometry(stack(FEET_FIRST, origin, 0));
+        assertEquals(0, geometry.nearestSlice(new double[] {0, 0, -100}));
+        assertEquals(0, geometry.nearestSlice(new double[] {0, 0, 100}));
+    }
+
+    @Test
+    void sortSlicesFlipsANormalPointingToTheFeet() {
+        List<DicomSlice> slices = new ArrayList<>();
+        for (double z : new double[] {12.5, -3, 40, 0.25, 7}) {
+            slices.add(slice(FEET_FIRST, new double[] {-100, 100, z}, 0.5, 0.5));
+        }
+        VolumeGeometry.sortSlices(slices);
+
+        double[] sorted = slices.stream().mapToDouble(s -> s.imagePosition[2]).toArray();
+        assertArrayEquals(new double[] {-3, 0.25, 7, 12.5, 40}, sorted, 0);
+
+        // Ascending z is slice order, so voxel z still runs towards the head
+        VolumeGeometry geometry = new VolumeGeometry(slices);
+        assertEquals(0, geometry.nearestSlice(new double[] {0, 0, -10}));
+        assertEquals(4, geometry.nearestSlice(new double[] {0, 0, 35}));
+        double[] out = new double[3];
+        geometry.voxelToPatient(0, 0, 4, out);
+        assertEquals(40, out[2], EPSILON);
+    }
+
+    @Test
+    void sortSlicesOrdersObliqueSlicesAlongTheNormal() {
+        double[] origin = {10, 20, 30};
+        List<DicomSlice> slices = stack(OBLIQUE, origin, 4.5, -1, 0.3, 2);
+        VolumeGeometry.sortSlices(slices);
+
+        double[] normal = normal(OBLIQUE);
+        double[] distances = slices.stream().mapToDouble(s -> (s.imagePosition[0] - origin[0]) * normal[0]
+                + (s.imagePosition[1] - origin[1]) * normal[1] + (s.imagePosition[2] - origin[2]) * normal[2]).toArray();
+        // The normal already points towards the head, so it is not flipped
+        assertArrayEquals(new double[] {-1, 0.3, 2, 4.5}, distances, EPSILON);
+    }
+}